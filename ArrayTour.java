@@ -0,0 +1,156 @@
+// Array representation of a tour for the local search improvements
+// CSC 242-01
+// December 7, 2021
+
+import java.util.Arrays;
+
+/*
+ * Keeps the cities in visiting order together with the position of every city, so the next and
+ * previous city of any city can be looked up in O(1). Moves change the tour only by reversing a
+ * stretch of positions; reversing the other part of the cycle gives the same tour, so the shorter
+ * of the two is the one that is actually moved.
+ *
+ * Reversing the same two positions twice restores the tour, so a move can be undone by replaying
+ * its reversals in the opposite order. With journaling on, every reversal is recorded in a journal, so
+ * the tour can be rolled back to any earlier mark() as long as the journal hasn't been cleared since.
+ * Journaling is off by default, since searches that never roll back would only grow the journal.
+ */
+public class ArrayTour {
+    private final int n;
+    private final int[] tour; // City at every position
+    private final int[] position; // Position of every city
+    private int[] journal = new int[64]; // Pairs of positions reversed since the journal was last cleared
+    private int journalLength; // Number of entries in the journal
+    private boolean journaling = false;
+
+    public ArrayTour(int[] order) {
+        n = order.length;
+        tour = order.clone();
+        position = new int[n];
+        for (int i = 0; i < n; i++)
+            position[tour[i]] = i;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public int next(int city) {
+        int i = position[city] + 1;
+        return tour[i == n ? 0 : i];
+    }
+
+    public int prev(int city) {
+        int i = position[city] - 1;
+        return tour[i < 0 ? n - 1 : i];
+    }
+
+    public int cityAt(int i) {
+        return tour[i];
+    }
+
+    public int positionOf(int city) {
+        return position[city];
+    }
+
+    // Whether b is on the way from a to c, going forward along the tour
+    public boolean between(int a, int b, int c) {
+        int pa = position[a], pb = position[b], pc = position[c];
+        if (pa <= pc)
+            return pa <= pb && pb <= pc;
+        return pb >= pa || pb <= pc;
+    }
+
+    // Reverse the path that starts at city from and goes forward to city to
+    public void reversePath(int from, int to) {
+        reverse(position[from], position[to]);
+    }
+
+    /*
+     * Remove the edges (a, b) and (c, d) and add (a, c) and (b, d), reversing the path in between.
+     * b must follow a in the same direction that d follows c (both next or both prev).
+     */
+    public void twoOptMove(int a, int b, int c, int d) {
+        if (next(a) == b)
+            reversePath(b, c); // a b ... c d becomes a c ... b d
+        else
+            reversePath(c, b); // d c ... b a becomes d b ... c a
+    }
+
+    // Start or stop recording reversals. Stopping also clears the journal
+    public void setJournaling(boolean journaling) {
+        this.journaling = journaling;
+        if (!journaling)
+            journalLength = 0;
+    }
+
+    public boolean isJournaling() {
+        return journaling;
+    }
+
+    // Forget the recorded reversals, keeping the tour as it is
+    public void clearJournal() {
+        journalLength = 0;
+    }
+
+    // Point in the journal that rollBack() can return the tour to
+    public int mark() {
+        return journalLength;
+    }
+
+    // Undo every reversal made since the mark was taken
+    public void rollBack(int mark) {
+        while (journalLength > mark) {
+            journalLength -= 2;
+            int i = journal[journalLength], j = journal[journalLength + 1];
+            int saved = journalLength;
+            reverse(i, j);
+            journalLength = saved; // The undo itself isn't recorded
+        }
+    }
+
+    // Reverse the cities at positions i, i + 1, ..., j (wrapping around the end of the array)
+    public void reverse(int i, int j) {
+        if (journaling) {
+            if (journalLength + 2 > journal.length)
+                journal = Arrays.copyOf(journal, journal.length * 2);
+            journal[journalLength++] = i;
+            journal[journalLength++] = j;
+        }
+
+        int length = j - i;
+        if (length < 0)
+            length += n;
+        length++;
+
+        // Reversing the rest of the cycle gives the same tour, so do whichever is shorter
+        if (2 * length > n) {
+            int newI = j + 1, newJ = i - 1;
+            i = newI == n ? 0 : newI;
+            j = newJ < 0 ? n - 1 : newJ;
+            length = n - length;
+        }
+
+        for (int swaps = length / 2; swaps > 0; swaps--) {
+            int cityI = tour[i], cityJ = tour[j];
+            tour[i] = cityJ;
+            position[cityJ] = i;
+            tour[j] = cityI;
+            position[cityI] = j;
+
+            if (++i == n)
+                i = 0;
+            if (--j < 0)
+                j = n - 1;
+        }
+    }
+
+    // Length of the closed tour
+    public double length(DistanceOracle distances) {
+        return Tours.length(distances, tour);
+    }
+
+    public int[] toArray() {
+        return tour.clone();
+    }
+}
@@ -0,0 +1,405 @@
+// Command line driver for running the Traveling Salesman Problem solvers without the JavaFX window
+// CSC 242-01
+// December 7, 2021
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Runs one solver on one instance and reports how it went, for use on machines with no display.
+ * Nothing in here touches JavaFX, so it runs without it on the class path.
+ *
+ * Usage: java BatchSolver --solver ga|nearest|greedy|hilbert|heldkarp|portfolio [options]
+ *   --input FILE       load the instance from a TSPLIB or CSV file instead of generating one
+ *   --nodes N          number of random nodes to generate (default 12)
+ *   --width W          width of the area the nodes are placed in (default 1000)
+ *   --height H         height of the area the nodes are placed in (default 800)
+ *   --population P     population size for the genetic algorithm (default 100)
+ *   --selection S      pick GA parents by roulette (default), prefix_sum, alias, tournament or rank
+ *   --mutation M       mutate GA children by adjacent_swap (default), swap, two_opt or insertion
+ *   --parallel true    score the genetic algorithm's population (or work out the hilbert keys, or fill the heldkarp table) on all cores
+ *   --initial hilbert  start the genetic algorithm from the hilbert tour as well as random ones
+ *   --islands I        run I genetic algorithm populations on their own threads (default 1)
+ *   --migration K      generations between migrations of the best paths between islands (default 50)
+ *   --topology T       islands send their best paths to the next island (ring) or to all of them (full)
+ *   --generations G    stop the genetic algorithm after G generations
+ *   --time-limit S     stop the genetic algorithm after S seconds, or give the portfolio S seconds
+ *   --improve M        improve the solver's tour afterwards with 2opt, oropt, lk or window local search
+ *   --window W         cities re-ordered exactly at a time by --improve window (2 to 24, default 10)
+ *   --improve-time S   stop the lk search after S seconds (default: after one kick per node)
+ *   --progress true    print every improvement found by --improve lk or the portfolio as it happens
+ *   --metrics true     turn on the solver metrics (see Metrics) and add them to the stats
+ *   --trace FILE       record how the tour improves over the run (see ConvergenceTrace; .csv for text)
+ *   --seed N           seed for everything random, so the run can be repeated (default: a new one, printed with the stats)
+ *   --output FILE      write the tour to FILE, one node index per line
+ *   --stats FILE       also write the run statistics to FILE
+ *
+ * The genetic algorithm needs at least one of --generations and --time-limit. The portfolio runs
+ * greedy, nearest neighbour, hilbert, greedy with lk, the genetic algorithm and (up to 25 nodes, if its
+ * table fits in memory) heldkarp side by side for --time-limit seconds and keeps the shortest tour.
+ * When heldkarp is run on its own and can't solve the instance exactly, it returns the nearest
+ * neighbour tour and reports exact=false.
+ */
+public class BatchSolver {
+
+    public static void main(String[] args) {
+        try {
+            run(parseArguments(args));
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.err.println("Usage: java BatchSolver --solver ga|nearest|greedy|hilbert|heldkarp|portfolio [--input FILE] [--nodes N] [--width W] [--height H]"
+                    + " [--population P] [--selection S] [--mutation M] [--parallel true] [--initial hilbert] [--islands I] [--migration K] [--topology ring|full] [--generations G] [--time-limit S] [--improve 2opt|oropt|lk|window] [--window W] [--improve-time S] [--progress true] [--metrics true] [--trace FILE] [--seed N] [--output FILE] [--stats FILE]");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.exit(2);
+        }
+    }
+
+    // Turn "--name value" pairs into a map from name to value
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length)
+                throw new IllegalArgumentException("Expected --name value, found " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        if (!options.containsKey("solver"))
+            throw new IllegalArgumentException("No solver given");
+        return options;
+    }
+
+    private static void run(Map<String, String> options) throws IOException {
+        String solver = options.get("solver");
+        int numberOfNodes = intOption(options, "nodes", 12);
+        int width = intOption(options, "width", 1000);
+        int height = intOption(options, "height", 800);
+        long seed = options.containsKey("seed") ? longOption(options, "seed") : RandomStreams.newSeed();
+        Metrics.setEnabled(Boolean.parseBoolean(options.get("metrics")));
+
+        Instance instance;
+        if (options.containsKey("input")) {
+            instance = InstanceLoader.load(Paths.get(options.get("input")));
+            if (instance.size() < 2)
+                throw new IllegalArgumentException(options.get("input") + " has " + instance.size() + " nodes, but at least 2 are needed");
+        } else {
+            if (numberOfNodes < 2)
+                throw new IllegalArgumentException("Please enter a value greater than 1 for the number of nodes");
+            instance = Instance.random(numberOfNodes, width, height, RandomStreams.derive(seed, 0));
+        }
+
+        Map<String, String> stats = new LinkedHashMap<>();
+        stats.put("solver", solver);
+        stats.put("nodes", String.valueOf(instance.size()));
+        stats.put("seed", String.valueOf(seed));
+
+        long startTime = System.nanoTime();
+        int[] tour;
+        ConvergenceTrace trace = options.containsKey("trace") ? new ConvergenceTrace(Paths.get(options.get("trace"))) : null;
+
+        try {
+            switch (solver) {
+                case "ga":
+                    tour = runGeneticAlgorithm(instance, options, stats, RandomStreams.derive(seed, 1), trace);
+                    break;
+                case "nearest":
+                    tour = new TSPNearestNeighbour(instance).solve(new CancellationToken(), listenerOption(options, trace));
+                    break;
+                case "greedy":
+                    tour = new GreedyAlgorithm(instance).solve(new CancellationToken(), listenerOption(options, trace));
+                    break;
+                case "hilbert":
+                    HilbertCurve hilbert = new HilbertCurve(instance);
+                    hilbert.setParallel(Boolean.parseBoolean(options.getOrDefault("parallel", "false")));
+                    tour = hilbert.solve(new CancellationToken(), listenerOption(options, trace));
+                    break;
+                case "heldkarp":
+                    HeldKarp heldKarp = new HeldKarp(instance);
+                    heldKarp.setParallel(Boolean.parseBoolean(options.getOrDefault("parallel", "false")));
+                    tour = heldKarp.solve(new CancellationToken(), listenerOption(options, trace));
+                    if (!heldKarp.isExact())
+                        System.err.println("Warning: " + instance.size() + " nodes are too many for heldkarp in this heap, so this is the nearest neighbour tour");
+                    stats.put("exact", String.valueOf(heldKarp.isExact()));
+                    stats.put("floatTable", String.valueOf(heldKarp.isUsingFloats()));
+                    break;
+                case "portfolio":
+                    tour = runPortfolio(instance, options, stats, seed, trace);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown solver " + solver);
+            }
+
+            if (options.containsKey("improve")) {
+                stats.put("constructedLength", String.format("%.2f", Tours.length(instance.getDistances(), tour)));
+                tour = improve(instance, tour, options, RandomStreams.derive(seed, 2), trace);
+            }
+        } finally {
+            if (trace != null)
+                trace.close();
+        }
+        if (trace != null)
+            stats.put("traceDropped", String.valueOf(trace.getDropped()));
+
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        stats.put("tourLength", String.format("%.2f", Tours.length(instance.getDistances(), tour)));
+        stats.put("elapsedSeconds", String.format("%.3f", elapsedSeconds));
+        if (stats.containsKey("generations"))
+            stats.put("generationsPerSecond", String.format("%.1f", Long.parseLong(stats.get("generations")) / elapsedSeconds));
+        if (Metrics.isEnabled()) {
+            Map<String, Number> metrics = Metrics.snapshot();
+            for (Map.Entry<String, Number> entry : metrics.entrySet())
+                stats.put("metrics." + entry.getKey(), String.valueOf(entry.getValue()));
+            if (metrics.containsKey("ga.evaluations"))
+                stats.put("evaluationsPerSecond", String.format("%.1f", metrics.get("ga.evaluations").longValue() / elapsedSeconds));
+        }
+
+        if (options.containsKey("output")) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(options.get("output"))))) {
+                for (int city : tour)
+                    out.println(city);
+            }
+        }
+
+        ArrayList<String> lines = new ArrayList<>();
+        for (Map.Entry<String, String> entry : stats.entrySet())
+            lines.add(entry.getKey() + "=" + entry.getValue());
+
+        lines.forEach(System.out::println);
+        if (options.containsKey("stats"))
+            Files.write(Paths.get(options.get("stats")), lines);
+    }
+
+    // Run generations until the generation or time budget runs out
+    private static int[] runGeneticAlgorithm(Instance instance, Map<String, String> options, Map<String, String> stats, long seed,
+            ConvergenceTrace trace) {
+        int populationSize = populationOption(options);
+        int maxGenerations = intOption(options, "generations", Integer.MAX_VALUE);
+        double timeLimit = doubleOption(options, "time-limit", Double.POSITIVE_INFINITY);
+
+        if (maxGenerations == Integer.MAX_VALUE && timeLimit == Double.POSITIVE_INFINITY)
+            throw new IllegalArgumentException("The genetic algorithm needs --generations or --time-limit");
+        if (maxGenerations < 0)
+            throw new IllegalArgumentException("Please enter a value of 0 or more for --generations");
+        if (!(timeLimit >= 0))
+            throw new IllegalArgumentException("Please enter a value of 0 or more for --time-limit");
+
+        if (intOption(options, "islands", 1) > 1)
+            return runIslandModel(instance, options, stats, seed, populationSize, maxGenerations, timeLimit, trace);
+
+        long deadline = timeLimit == Double.POSITIVE_INFINITY ? Long.MAX_VALUE : System.nanoTime() + (long) (timeLimit * 1e9);
+
+        GeneticAlgorithm geneticAlgo = new GeneticAlgorithm(populationSize, instance, seed);
+        geneticAlgo.setSelection(selectionOption(options));
+        geneticAlgo.setMutation(mutationOption(options));
+        geneticAlgo.setParallel(Boolean.parseBoolean(options.getOrDefault("parallel", "false")));
+        geneticAlgo.setTrace(trace);
+        int[] initialTour = initialOption(instance, options);
+        if (initialTour != null)
+            geneticAlgo.seedPopulation(initialTour);
+        geneticAlgo.runGeneticAlgorithm();
+        while (geneticAlgo.getPopulationCount() < maxGenerations && System.nanoTime() < deadline)
+            geneticAlgo.runGeneticAlgorithm();
+        int[] order = geneticAlgo.getBestPath();
+
+        stats.put("population", String.valueOf(populationSize));
+        stats.put("generations", String.valueOf(geneticAlgo.getPopulationCount()));
+        stats.put("bestRecordedDistance", String.format("%.2f", geneticAlgo.getBestRecordedDistance()));
+        return order;
+    }
+
+    // Same budget as above, but for every island, with the islands running side by side
+    private static int[] runIslandModel(Instance instance, Map<String, String> options, Map<String, String> stats, long seed,
+            int populationSize, int maxGenerations, double timeLimit, ConvergenceTrace trace) {
+        int islands = intOption(options, "islands", 1);
+        int migrationInterval = intOption(options, "migration", 50);
+        String topologyName = options.getOrDefault("topology", "ring");
+
+        IslandModel.Topology topology;
+        if (topologyName.equals("ring"))
+            topology = IslandModel.Topology.RING;
+        else if (topologyName.equals("full"))
+            topology = IslandModel.Topology.FULLY_CONNECTED;
+        else
+            throw new IllegalArgumentException("Unknown topology " + topologyName);
+
+        IslandModel islandModel = new IslandModel(instance, islands, populationSize, migrationInterval, topology, seed);
+        islandModel.setSelection(selectionOption(options));
+        islandModel.setMutation(mutationOption(options));
+        islandModel.setTrace(trace);
+        int[] initialTour = initialOption(instance, options);
+        if (initialTour != null)
+            islandModel.seedPopulation(initialTour);
+        int[] order;
+        try {
+            order = islandModel.run(maxGenerations, timeLimit == Double.POSITIVE_INFINITY ? Long.MAX_VALUE : (long) (timeLimit * 1e9));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running the islands", ex);
+        }
+
+        stats.put("population", String.valueOf(populationSize));
+        stats.put("islands", String.valueOf(islands));
+        stats.put("generations", String.valueOf(islandModel.getMaxGenerationCount())); // Per island, so the rate compares with one population
+        stats.put("totalGenerations", String.valueOf(islandModel.getGenerationCount()));
+        stats.put("bestRecordedDistance", String.format("%.2f", islandModel.getBest().getLength()));
+        return order;
+    }
+
+    // Run the solvers side by side until the time limit and keep the best tour
+    private static int[] runPortfolio(Instance instance, Map<String, String> options, Map<String, String> stats, long seed,
+            ConvergenceTrace trace) {
+        double timeLimit = doubleOption(options, "time-limit", Double.NaN);
+        if (Double.isNaN(timeLimit))
+            throw new IllegalArgumentException("The portfolio needs --time-limit");
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("Please enter a value of 0 or more for --time-limit");
+
+        LinKernighan linKernighan = new LinKernighan(instance);
+        linKernighan.setSeed(RandomStreams.derive(seed, 2));
+        GeneticAlgorithm geneticAlgo = new GeneticAlgorithm(populationOption(options), instance, RandomStreams.derive(seed, 1));
+        geneticAlgo.setSelection(selectionOption(options));
+        geneticAlgo.setMutation(mutationOption(options));
+        int[] initialTour = initialOption(instance, options);
+        if (initialTour != null)
+            geneticAlgo.seedPopulation(initialTour);
+
+        List<Solver> solvers = new ArrayList<>();
+        solvers.add(new GreedyAlgorithm(instance));
+        solvers.add(new TSPNearestNeighbour(instance));
+        solvers.add(new HilbertCurve(instance));
+        HeldKarp heldKarp = new HeldKarp(instance);
+        if (heldKarp.fits())
+            solvers.add(heldKarp);
+        solvers.add(new LinKernighanSolver(new GreedyAlgorithm(instance), linKernighan));
+        solvers.add(geneticAlgo);
+
+        PortfolioRunner.Result result;
+        try {
+            PortfolioRunner portfolio = new PortfolioRunner(solvers);
+            portfolio.setProgressListener(listenerOption(options, trace));
+            result = portfolio.run((long) (timeLimit * 1000));
+        } catch (IllegalStateException ex) { // Not even the quickest solver handed in a tour, so the limit is too short
+            throw new IllegalArgumentException("No solver finished within --time-limit " + options.get("time-limit")
+                    + " (plus the " + PortfolioRunner.GRACE_PERIOD + " ms grace period), please give the portfolio more time");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running the portfolio", ex);
+        }
+
+        for (Map.Entry<String, Double> entry : result.getLengths().entrySet())
+            stats.put(entry.getKey() + "Length", String.format("%.2f", entry.getValue()));
+        stats.put("winner", result.getSolver());
+        return result.getTour();
+    }
+
+    // Run a local search over the tour
+    private static int[] improve(Instance instance, int[] tour, Map<String, String> options, long seed, ConvergenceTrace trace) {
+        String method = options.get("improve");
+        switch (method) {
+            case "2opt":
+                return new TwoOpt(instance).improve(tour);
+            case "oropt":
+                return new OrOpt(instance).improve(tour);
+            case "window":
+                int window = intOption(options, "window", HeldKarp.DEFAULT_WINDOW);
+                if (window < 2 || window > HeldKarp.MAX_WINDOW)
+                    throw new IllegalArgumentException("Please enter a value from 2 to " + HeldKarp.MAX_WINDOW + " for --window");
+                HeldKarp heldKarp = new HeldKarp(instance);
+                if (heldKarp.windowFor(window, tour.length) != window)
+                    System.err.println("Warning: --window " + window + " is too big for this tour or heap, so windows of "
+                            + heldKarp.windowFor(window, tour.length) + " cities are used");
+                return heldKarp.improve(tour, window, new CancellationToken());
+            case "lk":
+                LinKernighan linKernighan = new LinKernighan(instance);
+                linKernighan.setSeed(seed);
+                if (options.containsKey("improve-time"))
+                    linKernighan.setTimeLimit((long) (doubleOption(options, "improve-time", 0) * 1000));
+                else
+                    linKernighan.setMaxKicks(instance.size());
+                return linKernighan.improve(tour, new CancellationToken(), listenerOption(options, trace));
+            default:
+                throw new IllegalArgumentException("Unknown improvement " + method);
+        }
+    }
+
+    // Prints improvements to standard error, so they don't mix with the stats
+    private static ProgressListener progressOption(Map<String, String> options) {
+        if (!Boolean.parseBoolean(options.getOrDefault("progress", "false")))
+            return ProgressListener.NONE;
+        return (solver, step, length, elapsed) -> System.err.printf("progress solver=%s step=%d length=%.2f elapsedSeconds=%.3f%n",
+                solver, step, length, elapsed / 1e9);
+    }
+
+    // Tour to seed the genetic algorithm with, or null to start from random tours only
+    private static int[] initialOption(Instance instance, Map<String, String> options) {
+        String initial = options.get("initial");
+        if (initial == null)
+            return null;
+        if (!initial.equals("hilbert"))
+            throw new IllegalArgumentException("Unknown initial tour " + initial);
+        return new HilbertCurve(instance).calcTour();
+    }
+
+    // The --progress listener, also recording into the --trace if there is one
+    private static ProgressListener listenerOption(Map<String, String> options, ConvergenceTrace trace) {
+        ProgressListener listener = progressOption(options);
+        return trace == null ? listener : listener.andThen(trace);
+    }
+
+    private static int populationOption(Map<String, String> options) {
+        int populationSize = intOption(options, "population", 100);
+        if (populationSize < 1)
+            throw new IllegalArgumentException("Please enter a value greater than 0 for --population");
+        return populationSize;
+    }
+
+    private static ParentSelection.Method selectionOption(Map<String, String> options) {
+        String name = options.getOrDefault("selection", "roulette");
+        try {
+            return ParentSelection.Method.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown selection method " + name);
+        }
+    }
+
+    private static GeneticAlgorithm.Mutation mutationOption(Map<String, String> options) {
+        String name = options.getOrDefault("mutation", "adjacent_swap");
+        try {
+            return GeneticAlgorithm.Mutation.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown mutation " + name);
+        }
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        try {
+            return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Please enter a valid integer value for --" + name);
+        }
+    }
+
+    private static long longOption(Map<String, String> options, String name) {
+        try {
+            return Long.parseLong(options.get(name));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Please enter a valid integer value for --" + name);
+        }
+    }
+
+    private static double doubleOption(Map<String, String> options, String name, double defaultValue) {
+        try {
+            return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Please enter a valid number for --" + name);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+// Benchmarks for the solvers and their inner loops, for catching performance regressions
+// CSC 242-01
+// December 7, 2021
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.DoubleSupplier;
+
+/*
+ * A small benchmark harness in the spirit of JMH (which would need a build tool this project doesn't
+ * have). Every benchmark is run over and over for a warm-up period so the JIT has compiled it, then
+ * for a measurement period, and reports:
+ *  - ops/s: runs of the benchmark per second during the measurement
+ *  - bytes/op: memory allocated per run by the benchmark thread. Work done on other threads (the
+ *    parallel sorts and streams) isn't counted, so this is a lower bound for those benchmarks
+ *  - quality: for the benchmarks that build a tour, its length divided by 0.7124 * sqrt(n * area),
+ *    the expected optimal tour length for n uniform random cities. Lower is better; clustered
+ *    instances come out well under 1
+ *
+ * Every benchmark runs on uniform and on clustered instances of each size.
+ *
+ * Usage: java Benchmarks [options]
+ *   --sizes LIST       comma separated instance sizes (default 100,1000,10000,100000)
+ *   --filter TEXT      only run benchmarks whose name contains TEXT
+ *   --warmup S         seconds of warm-up per benchmark (default 0.5)
+ *   --time S           seconds of measurement per benchmark (default 1)
+ *   --population P     population size for the genetic algorithm benchmarks (default 100)
+ *   --seed N           seed for the instances and the algorithms (default 1)
+ *   --output FILE      also write the results to FILE as CSV
+ */
+public class Benchmarks {
+    private static final int WIDTH = 1000, HEIGHT = 800;
+    private static final int MAX_SELECTION_POPULATION = 10000; // Roulette selection is O(P^2) per generation
+
+    // One run of a benchmark. Returns something made from the result, so the JIT can't drop the work
+    private interface Workload {
+        double run();
+    }
+
+    private static volatile double sink; // Where the workload results go
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Map<String, String> options;
+    private final long warmupTime, measureTime; // Nanoseconds
+    private final String filter;
+    private final List<String> results = new ArrayList<>();
+
+    private Benchmarks(Map<String, String> options) {
+        this.options = options;
+        warmupTime = (long) (Double.parseDouble(options.getOrDefault("warmup", "0.5")) * 1e9);
+        measureTime = (long) (Double.parseDouble(options.getOrDefault("time", "1")) * 1e9);
+        filter = options.getOrDefault("filter", "");
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                System.err.println("Usage: java Benchmarks [--sizes LIST] [--filter TEXT] [--warmup S] [--time S] [--population P] [--seed N] [--output FILE]");
+                System.exit(1);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        new Benchmarks(options).runAll();
+    }
+
+    private void runAll() throws IOException {
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int populationSize = Integer.parseInt(options.getOrDefault("population", "100"));
+
+        results.add("benchmark,distribution,n,opsPerSecond,bytesPerOp,quality");
+        System.out.printf("%-28s %-10s %8s %14s %14s %8s%n", "benchmark", "instances", "n", "ops/s", "bytes/op", "quality");
+
+        for (String size : options.getOrDefault("sizes", "100,1000,10000,100000").split(",")) {
+            int n = Integer.parseInt(size.trim());
+
+            for (String distribution : new String[] {"uniform", "clustered"}) {
+                long instanceSeed = RandomStreams.derive(seed, n);
+                Instance instance = distribution.equals("uniform")
+                        ? Instance.random(n, WIDTH, HEIGHT, instanceSeed)
+                        : clustered(n, instanceSeed);
+                runInstance(instance, distribution, populationSize, seed);
+            }
+        }
+
+        if (options.containsKey("output"))
+            Files.write(Paths.get(options.get("output")), results);
+    }
+
+    private void runInstance(Instance instance, String distribution, int populationSize, long seed) {
+        int n = instance.size();
+        DistanceOracle distances = instance.getDistances();
+
+        // Construction heuristics
+        if (wanted("greedy.makeCandidateGraph") || wanted("greedy.calcPath")) {
+            GreedyAlgorithm greedyAlgo = new GreedyAlgorithm(instance);
+            bench("greedy.makeCandidateGraph", distribution, instance, () -> {
+                greedyAlgo.makeCandidateGraph();
+                return greedyAlgo.getCandidates().getK();
+            }, null);
+            bench("greedy.calcPath", distribution, instance, () -> greedyAlgo.calcPath().size(),
+                    () -> Tours.length(distances, Tours.fromEdges(greedyAlgo.calcPath(), n)));
+        }
+
+        if (wanted("nearest.calcPath")) {
+            TSPNearestNeighbour nearestAlgo = new TSPNearestNeighbour(instance);
+            bench("nearest.calcPath", distribution, instance, () -> nearestAlgo.calcPath().size(),
+                    () -> Tours.length(distances, Tours.fromPath(nearestAlgo.calcPath())));
+        }
+
+        if (wanted("hilbert.calcTour")) {
+            HilbertCurve hilbert = new HilbertCurve(instance);
+            bench("hilbert.calcTour", distribution, instance, () -> hilbert.calcTour().length,
+                    () -> Tours.length(distances, hilbert.calcTour()));
+        }
+
+        // Genetic algorithm: a whole generation, then its inner loops on their own
+        if (wanted("ga.")) {
+            GeneticAlgorithm geneticAlgo = new GeneticAlgorithm(populationSize, instance, seed);
+            bench("ga.generation", distribution, instance, geneticAlgo::runGeneticAlgorithm,
+                    () -> Tours.length(distances, geneticAlgo.getBestPath()));
+
+            SplittableRandom rand = RandomStreams.stream(seed, n);
+            int[] orderA = shuffled(n, rand), orderB = shuffled(n, rand), child = new int[n];
+            bench("ga.calcDistance", distribution, instance, () -> geneticAlgo.calcDistance(orderA), null);
+            bench("ga.crossOver", distribution, instance, () -> {
+                geneticAlgo.crossOver(orderA, orderB, child, false);
+                return child[0];
+            }, null);
+        }
+
+        // Parent selection, one generation's worth of picks. It doesn't depend on the instance, so only run it once
+        if (distribution.equals("uniform")) {
+            int population = Math.min(n, MAX_SELECTION_POPULATION);
+            double[] fitness = new double[population], lengths = new double[population];
+            SplittableRandom rand = RandomStreams.stream(seed, -n);
+            double sum = 0;
+            for (int i = 0; i < population; i++) {
+                lengths[i] = 1000 + rand.nextDouble() * 1000;
+                fitness[i] = 1 / (lengths[i] + 1);
+                sum += fitness[i];
+            }
+            for (int i = 0; i < population; i++)
+                fitness[i] /= sum;
+
+            for (ParentSelection.Method method : ParentSelection.Method.values()) {
+                String name = "selection." + method.name().toLowerCase();
+                if (!wanted(name))
+                    continue;
+
+                ParentSelection selection = ParentSelection.create(method, population);
+                bench(name, "-", population, () -> {
+                    selection.prepare(fitness, lengths);
+                    int picked = 0;
+                    for (int i = 0; i < 2 * population; i++)
+                        picked += selection.pick(rand);
+                    return picked;
+                }, null, 0);
+            }
+        }
+    }
+
+    // Whether any benchmark in a group (a name, or a prefix like "ga.") passes the filter
+    private boolean wanted(String name) {
+        return name.contains(filter) || filter.contains(name);
+    }
+
+    private void bench(String name, String distribution, Instance instance, Workload workload, DoubleSupplier tourLength) {
+        bench(name, distribution, instance.size(), workload, tourLength, 0.7124 * Math.sqrt((double) instance.size() * WIDTH * HEIGHT));
+    }
+
+    private void bench(String name, String distribution, int n, Workload workload, DoubleSupplier tourLength, double expectedLength) {
+        if (!name.contains(filter))
+            return;
+
+        // Warm up, always at least once
+        long start = System.nanoTime();
+        do {
+            sink = workload.run();
+        } while (System.nanoTime() - start < warmupTime);
+
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = allocatedBytes(thread);
+        long ops = 0;
+        start = System.nanoTime();
+        long elapsed;
+        do {
+            sink = workload.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < measureTime);
+        long allocated = allocatedBytes(thread) - allocatedBefore;
+
+        double opsPerSecond = ops / (elapsed / 1e9);
+        double bytesPerOp = allocatedBefore < 0 ? Double.NaN : (double) allocated / ops;
+        double quality = tourLength == null ? Double.NaN : tourLength.getAsDouble() / expectedLength;
+
+        System.out.printf("%-28s %-10s %8d %14.2f %14.0f %8s%n", name, distribution, n, opsPerSecond, bytesPerOp,
+                Double.isNaN(quality) ? "-" : String.format("%.4f", quality));
+        results.add(String.format("%s,%s,%d,%.3f,%.0f,%s", name, distribution, n, opsPerSecond, bytesPerOp,
+                Double.isNaN(quality) ? "" : String.format("%.6f", quality)));
+    }
+
+    // Bytes allocated so far by the thread, or -1 if the JVM can't tell
+    private long allocatedBytes(long thread) {
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread);
+        return -1;
+    }
+
+    /*
+     * Cities in about n / 100 round clusters with normally distributed distances from their centres,
+     * the kind of instance where the uniform-grid assumptions of the heuristics hold up worst.
+     */
+    private static Instance clustered(int n, long seed) {
+        SplittableRandom rand = new SplittableRandom(seed);
+        int clusters = Math.max(1, n / 100);
+        double spread = Math.min(WIDTH, HEIGHT) / (4 * Math.sqrt(clusters));
+
+        double[] centreX = new double[clusters], centreY = new double[clusters];
+        for (int c = 0; c < clusters; c++) {
+            centreX[c] = rand.nextDouble() * WIDTH;
+            centreY[c] = rand.nextDouble() * HEIGHT;
+        }
+
+        double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; i++) {
+            int c = rand.nextInt(clusters);
+
+            // Box-Muller transform for two normally distributed offsets
+            double radius = spread * Math.sqrt(-2 * Math.log(1 - rand.nextDouble()));
+            double angle = 2 * Math.PI * rand.nextDouble();
+            x[i] = Math.max(0, Math.min(WIDTH, centreX[c] + radius * Math.cos(angle)));
+            y[i] = Math.max(0, Math.min(HEIGHT, centreY[c] + radius * Math.sin(angle)));
+        }
+        return Instance.adopt(x, y, Instance.Metric.EUCLIDEAN);
+    }
+
+    private static int[] shuffled(int n, SplittableRandom rand) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+        return order;
+    }
+}
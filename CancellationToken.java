@@ -0,0 +1,67 @@
+// Flag for asking running solvers to stop, shared between the solvers and whoever started them
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * Cancellation is cooperative: cancel() only sets a flag, and each solver checks it between steps of
+ * its own work, so a solver stops at the next point where it has a valid tour to return.
+ *
+ * A token can also have a deadline, after which it counts as cancelled by itself. Checking the
+ * deadline reads the clock, so solvers with short steps only check every few hundred or thousand
+ * steps (see CHECK_INTERVAL). Once the deadline has passed the flag is set, and later checks are
+ * a plain volatile read again.
+ */
+public class CancellationToken {
+    public static final int CHECK_INTERVAL = 1024; // Suggested steps between checks in tight loops (a power of two)
+
+    private volatile boolean cancelled;
+    private final long deadline; // System.nanoTime() at which the token cancels itself
+    private final boolean hasDeadline;
+    private final long createdAt = System.nanoTime();
+
+    // A token that is only cancelled by cancel()
+    public CancellationToken() {
+        this.deadline = 0;
+        this.hasDeadline = false;
+    }
+
+    private CancellationToken(long deadline) {
+        this.deadline = deadline;
+        this.hasDeadline = true;
+    }
+
+    // A token that cancels itself at the given System.nanoTime()
+    public static CancellationToken withDeadline(long deadline) {
+        return new CancellationToken(deadline);
+    }
+
+    // A token that cancels itself after the given number of milliseconds
+    public static CancellationToken withTimeout(long milliseconds) {
+        return new CancellationToken(System.nanoTime() + milliseconds * 1_000_000L);
+    }
+
+    public boolean isCancelled() {
+        if (cancelled)
+            return true;
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            cancelled = true;
+            return true;
+        }
+        return false;
+    }
+
+    // Ask everything using this token to stop. Safe to call from any thread, and more than once
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Nanoseconds left until the deadline (negative once it has passed), or Long.MAX_VALUE without one
+    public long remaining() {
+        return hasDeadline ? deadline - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    // Nanoseconds since the token was made, which is the elapsed time progress reports use
+    public long elapsed() {
+        return System.nanoTime() - createdAt;
+    }
+}
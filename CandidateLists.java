@@ -0,0 +1,57 @@
+// Lists of the k nearest neighbours of every city, used to limit which edges the solvers look at
+// CSC 242-01
+// December 7, 2021
+
+import java.util.stream.IntStream;
+
+/*
+ * Good tours almost only use edges between cities that are close to each other, so instead of
+ * considering all n(n-1)/2 edges the solvers only look at the edges from each city to its k nearest
+ * neighbours. The lists are stored flat in one int[]: the neighbours of city c are at
+ * c * k ... c * k + k - 1, nearest first.
+ */
+public class CandidateLists {
+    private static final int CHUNK_SIZE = 1024; // Cities handled by one parallel task
+
+    private final int k;
+    private final int[] neighbours;
+
+    public CandidateLists(Instance instance, int k) {
+        this(instance, new KdTree(instance), k);
+    }
+
+    public CandidateLists(Instance instance, KdTree tree, int k) {
+        int n = instance.size();
+        this.k = Math.max(0, Math.min(k, n - 1));
+        neighbours = new int[n * this.k];
+
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int[] ids = new int[this.k];
+            double[] squaredDistances = new double[this.k];
+
+            for (int city = chunk * CHUNK_SIZE; city < Math.min(n, (chunk + 1) * CHUNK_SIZE); city++) {
+                tree.kNearest(city, this.k, ids, squaredDistances);
+                System.arraycopy(ids, 0, neighbours, city * this.k, this.k);
+            }
+        });
+    }
+
+    // Number of neighbours stored for every city
+    public int getK() {
+        return k;
+    }
+
+    // The i-th nearest neighbour of the city (i = 0 is the nearest)
+    public int get(int city, int i) {
+        return neighbours[city * k + i];
+    }
+
+    // Whether other is one of the neighbours of city
+    public boolean contains(int city, int other) {
+        for (int i = city * k; i < city * k + k; i++)
+            if (neighbours[i] == other)
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+// Distance oracle that computes every distance from the coordinates
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * Stores nothing, so it works for any number of cities.
+ * Math.hypot guards against overflow in software and is much slower than it needs to be for
+ * coordinates of this size, so the Euclidean kernel here is sqrt(dx * dx + dy * dy), which the JIT
+ * compiles down to a single square root instruction. The other backends fill their tables from here.
+ *
+ * The ATT and GEO metrics follow the TSPLIB definitions, so their distances are whole numbers.
+ */
+public class ComputedDistance implements DistanceOracle {
+    private static final double PI = 3.141592; // The value TSPLIB uses for GEO distances
+    private static final double EARTH_RADIUS = 6378.388;
+
+    private final Instance instance;
+    private final Instance.Metric metric;
+    private final double[] latitude, longitude; // Coordinates in radians, only for GEO instances
+
+    public ComputedDistance(Instance instance) {
+        this.instance = instance;
+        this.metric = instance.getMetric();
+
+        if (metric == Instance.Metric.GEO) {
+            latitude = new double[instance.size()];
+            longitude = new double[instance.size()];
+            for (int i = 0; i < instance.size(); i++) {
+                latitude[i] = toRadians(instance.getX(i));
+                longitude[i] = toRadians(instance.getY(i));
+            }
+        } else {
+            latitude = null;
+            longitude = null;
+        }
+    }
+
+    @Override
+    public double distance(int a, int b) {
+        double dx = instance.getX(a) - instance.getX(b);
+        double dy = instance.getY(a) - instance.getY(b);
+
+        switch (metric) {
+            case ATT: {
+                double r = Math.sqrt((dx * dx + dy * dy) / 10.0);
+                double t = Math.floor(r + 0.5);
+                return t < r ? t + 1 : t;
+            }
+            case GEO: {
+                if (a == b)
+                    return 0;
+                double q1 = Math.cos(longitude[a] - longitude[b]);
+                double q2 = Math.cos(latitude[a] - latitude[b]);
+                double q3 = Math.cos(latitude[a] + latitude[b]);
+                return (int) (EARTH_RADIUS * Math.acos(0.5 * ((1.0 + q1) * q2 - (1.0 - q1) * q3)) + 1.0);
+            }
+            default:
+                return length(dx, dy);
+        }
+    }
+
+    @Override
+    public int size() {
+        return instance.size();
+    }
+
+    // Length of the vector (dx, dy)
+    public static double length(double dx, double dy) {
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // TSPLIB GEO coordinates are DDD.MM (degrees and minutes)
+    private static double toRadians(double coordinate) {
+        int degrees = (int) coordinate;
+        double minutes = coordinate - degrees;
+        return PI * (degrees + 5.0 * minutes / 3.0) / 180.0;
+    }
+}
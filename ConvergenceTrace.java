@@ -0,0 +1,274 @@
+// Records how the solvers' tours improve over a run and writes it to a file in the background
+// CSC 242-01
+// December 7, 2021
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Every point of the trace is (solver, time, step, best length, relative best length, diversity). The
+ * genetic algorithm adds one per generation when it is given a trace (see GeneticAlgorithm.setTrace),
+ * and as a ProgressListener the trace takes a point for every improvement of any other solver, with
+ * the relative length and diversity left as NaN.
+ *
+ * Points go into a ring buffer of primitive arrays allocated up front, and a writer thread copies them
+ * out through a FileChannel every FLUSH_INTERVAL, or sooner once the buffer is half full. Adding a point
+ * never waits for the disk: if the writer has fallen a whole buffer behind, the point is dropped and
+ * counted instead (see getDropped()). Adding takes a lock so several solver threads can share one trace,
+ * but the writer never takes it, so the lock is only ever held for a few stores.
+ *
+ * Files ending in .csv are written as text with a header line, with solver names quoted when they have
+ * a comma in them. Anything else gets the binary format:
+ * the magic number "TSPT" and a version (short), then entries that each start with a tag byte:
+ *   'N' int id, short length, UTF-8 bytes    the name of solver id, before its first point
+ *   'P' int id, long nanoseconds, long step, double best, double relative, double diversity
+ * all big-endian. Running this class's main() on a binary trace prints it as CSV.
+ */
+public class ConvergenceTrace implements ProgressListener, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1 << 16; // Points the buffer holds
+    private static final int MAGIC = 0x54535054; // "TSPT"
+    private static final short VERSION = 1;
+    private static final long FLUSH_INTERVAL = 50_000_000L; // Nanoseconds between writes
+    private static final String CSV_HEADER = "solver,nanoseconds,step,best,relative,diversity\n";
+
+    private final FileChannel channel;
+    private final boolean csv;
+    private final long startTime = System.nanoTime();
+    private final Thread writer;
+
+    // The ring buffer, one array per field
+    private final int mask;
+    private final int[] solvers;
+    private final long[] times;
+    private final long[] steps;
+    private final double[] best;
+    private final double[] relative;
+    private final double[] diversity;
+    private volatile long head; // Next point to write out, only moved by the writer
+    private volatile long tail; // Next free slot, only moved by record()
+    private long dropped;
+
+    private final Map<String, Integer> solverIds = new HashMap<>();
+    private final ArrayList<String> solverNames = new ArrayList<>();
+    private int namesWritten; // Solver names the writer has put in the file so far
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private volatile boolean closed;
+    private IOException error; // First write that failed, thrown from close()
+
+    public ConvergenceTrace(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    public ConvergenceTrace(Path file, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        solvers = new int[size];
+        times = new long[size];
+        steps = new long[size];
+        best = new double[size];
+        relative = new double[size];
+        diversity = new double[size];
+
+        csv = file.getFileName().toString().endsWith(".csv");
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (csv)
+            buffer.put(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+        else
+            buffer.putInt(MAGIC).putShort(VERSION);
+
+        writer = new Thread(this::writeLoop, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Number for a solver's name, for record(). Look it up once rather than for every point
+    public synchronized int solverId(String solver) {
+        Integer id = solverIds.get(solver);
+        if (id == null) {
+            id = solverNames.size();
+            solverIds.put(solver, id);
+            solverNames.add(solver);
+        }
+        return id;
+    }
+
+    // Add a point to the trace, or drop it if the buffer is full. Never blocks on the file
+    public synchronized void record(int solver, long step, double bestLength, double relativeLength, double diversityValue) {
+        long position = tail;
+        if (position - head > mask) {
+            dropped++;
+            return;
+        }
+
+        int slot = (int) (position & mask);
+        solvers[slot] = solver;
+        times[slot] = System.nanoTime() - startTime;
+        steps[slot] = step;
+        best[slot] = bestLength;
+        relative[slot] = relativeLength;
+        diversity[slot] = diversityValue;
+        tail = position + 1;
+
+        if (position - head == (mask + 1) / 2) // Half full: don't wait for the next flush
+            LockSupport.unpark(writer);
+    }
+
+    @Override
+    public void improved(String solver, long step, double length, long elapsed) {
+        record(solverId(solver), step, length, Double.NaN, Double.NaN);
+    }
+
+    // Points that didn't fit in the buffer because the writer was too far behind
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    // Write out every point recorded so far, stop the writer and close the file
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+        if (error != null)
+            throw error;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                boolean last = closed; // Read before draining, so nothing recorded before close() is missed
+                drain();
+                flush();
+                if (last)
+                    return;
+                LockSupport.parkNanos(FLUSH_INTERVAL);
+            }
+        } catch (IOException ex) {
+            error = ex;
+        }
+    }
+
+    // Encode the points between head and tail into the byte buffer, writing it out whenever it fills up
+    private void drain() throws IOException {
+        long end = tail;
+        for (long position = head; position < end; position++) {
+            int slot = (int) (position & mask);
+            int solver = solvers[slot];
+
+            if (csv) {
+                String line = String.format(Locale.ROOT, "%s,%d,%d,%s,%s,%s\n", csvField(solverName(solver)), times[slot], steps[slot],
+                        best[slot], relative[slot], diversity[slot]);
+                put(line.getBytes(StandardCharsets.UTF_8));
+            } else {
+                while (namesWritten <= solver) {
+                    byte[] name = solverName(namesWritten).getBytes(StandardCharsets.UTF_8);
+                    ensureRoom(1 + 4 + 2 + name.length);
+                    buffer.put((byte) 'N').putInt(namesWritten).putShort((short) name.length).put(name);
+                    namesWritten++;
+                }
+                ensureRoom(1 + 4 + 8 + 8 + 8 + 8 + 8);
+                buffer.put((byte) 'P').putInt(solver).putLong(times[slot]).putLong(steps[slot])
+                        .putDouble(best[slot]).putDouble(relative[slot]).putDouble(diversity[slot]);
+            }
+            head = position + 1; // The slot has been copied, so record() can reuse it
+        }
+    }
+
+    private synchronized String solverName(int id) {
+        return solverNames.get(id);
+    }
+
+    // A solver name as a CSV field, in quotes (with quotes doubled) if it has a comma, quote or line break in it
+    private static String csvField(String name) {
+        if (name.indexOf(',') < 0 && name.indexOf('"') < 0 && name.indexOf('\n') < 0 && name.indexOf('\r') < 0)
+            return name;
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        ensureRoom(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    // Print a binary trace file as CSV: java ConvergenceTrace FILE
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java ConvergenceTrace FILE");
+            System.exit(1);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(args[0]))))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(args[0] + " is not a trace file");
+            short version = in.readShort();
+            if (version != VERSION)
+                throw new IOException("Unknown trace version " + version);
+
+            ArrayList<String> names = new ArrayList<>();
+            StringBuilder out = new StringBuilder(CSV_HEADER);
+            while (true) {
+                int tag;
+                try {
+                    tag = in.readUnsignedByte();
+                } catch (EOFException ex) {
+                    break;
+                }
+
+                if (tag == 'N') {
+                    int id = in.readInt();
+                    byte[] name = new byte[in.readShort()];
+                    in.readFully(name);
+                    while (names.size() <= id)
+                        names.add(null);
+                    names.set(id, new String(name, StandardCharsets.UTF_8));
+                } else if (tag == 'P') {
+                    int id = in.readInt();
+                    out.append(csvField(names.get(id))).append(',').append(in.readLong()).append(',').append(in.readLong())
+                            .append(',').append(in.readDouble()).append(',').append(in.readDouble())
+                            .append(',').append(in.readDouble()).append('\n');
+                    if (out.length() > 1 << 16) {
+                        System.out.print(out);
+                        out.setLength(0);
+                    }
+                } else {
+                    throw new IOException("Bad entry tag " + tag + " in " + args[0]);
+                }
+            }
+            System.out.print(out);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+// Distance oracle backed by a precomputed, packed upper-triangular distance matrix
+// CSC 242-01
+// December 7, 2021
+
+import java.util.stream.IntStream;
+
+/*
+ * Only the distances for a < b are stored, row after row, in one float[] of n(n-1)/2 entries.
+ * Row a starts at a(2n - a - 1)/2, so the whole matrix is one contiguous array and the distances
+ * from one city to the cities that come after it sit next to each other in memory.
+ */
+public class DistanceMatrix implements DistanceOracle {
+    private final int n;
+    private final float[] distances;
+
+    public DistanceMatrix(Instance instance) {
+        n = instance.size();
+        distances = new float[(int) ((long) n * (n - 1) / 2)];
+
+        ComputedDistance source = new ComputedDistance(instance);
+
+        // Rows are independent of each other, so they are filled in parallel
+        IntStream.range(0, n).parallel().forEach(a -> {
+            int index = rowStart(a);
+            for (int b = a + 1; b < n; b++)
+                distances[index++] = (float) source.distance(a, b);
+        });
+    }
+
+    // Number of bytes the matrix of an instance with n cities takes up
+    public static long bytesNeeded(int n) {
+        return (long) n * (n - 1) / 2 * Float.BYTES;
+    }
+
+    @Override
+    public double distance(int a, int b) {
+        if (a == b)
+            return 0;
+        if (a > b) {
+            int temp = a;
+            a = b;
+            b = temp;
+        }
+        return distances[rowStart(a) + b - a - 1];
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    // Index of the entry for (a, a + 1)
+    private int rowStart(int a) {
+        return a * (2 * n - a - 1) / 2;
+    }
+}
@@ -0,0 +1,41 @@
+// Interface for looking up the distance between two cities of an Instance
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * All solvers ask a DistanceOracle for edge lengths instead of calling Math.hypot themselves.
+ * There are two interchangeable backends, and forInstance() picks one from the number of cities
+ * and the heap that is left:
+ *  - DistanceMatrix: every distance precomputed into a packed upper-triangular float[] (small instances)
+ *  - ComputedDistance: nothing stored, every distance computed from the coordinates (everything bigger)
+ * There is no cache in between: the genetic algorithm looks up edges of random orders, which miss any
+ * partial matrix nearly every time, and a miss into main memory costs more than computing the distance.
+ */
+public interface DistanceOracle {
+
+    // Largest instance for which the full matrix is considered
+    int MATRIX_MAX_CITIES = 8192;
+
+    // Distance between city a and city b
+    double distance(int a, int b);
+
+    // Number of cities in the instance
+    int size();
+
+    // Choose a backend for the instance, using at most a quarter of the heap that is currently free
+    static DistanceOracle forInstance(Instance instance) {
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return forInstance(instance, freeHeap / 4);
+    }
+
+    // Choose a backend for the instance that uses no more than heapBudget bytes
+    static DistanceOracle forInstance(Instance instance, long heapBudget) {
+        int n = instance.size();
+
+        if (n <= MATRIX_MAX_CITIES && DistanceMatrix.bytesNeeded(n) <= heapBudget)
+            return new DistanceMatrix(instance);
+
+        return new ComputedDistance(instance);
+    }
+}
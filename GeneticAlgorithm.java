@@ -3,15 +3,46 @@
 // Luis Silva Carillo
 // December 7, 2021
 
-import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+public class GeneticAlgorithm implements Solver {
+
+	/*
+	 * Ways a child can be mutated. Each one changes only a few edges of the path, so the change in length
+	 * is worked out from those edges instead of measuring the whole path again.
+	 */
+	public enum Mutation {
+		ADJACENT_SWAP, // Swap a city with the one after it (the original mutation)
+		SWAP, // Swap two cities up to MUTATION_SPAN positions apart
+		TWO_OPT, // Reverse a stretch of up to MUTATION_SPAN cities
+		INSERTION // Move a city up to MUTATION_SPAN positions along the path
+	}
+
+	public static final int MUTATION_SPAN = 50;
 
-public class GeneticAlgorithm {
+	// Shared by every GeneticAlgorithm, so islands add up. Rates come from comparing two Metrics snapshots
+	private static final Metrics.Counter GENERATIONS = Metrics.counter("ga.generations");
+	private static final Metrics.Counter EVALUATIONS = Metrics.counter("ga.evaluations"); // Children scored
+	private static final Metrics.Counter SELECTION_NANOS = Metrics.counter("ga.selection_nanos");
+	private static final Metrics.Counter CROSSOVER_NANOS = Metrics.counter("ga.crossover_nanos");
+	private static final Metrics.Counter MUTATION_NANOS = Metrics.counter("ga.mutation_nanos");
+	private static final Metrics.Counter FITNESS_NANOS = Metrics.counter("ga.fitness_nanos");
 
 	private int populationSize; // The size of the population
-	private ArrayList<Node> nodes = new ArrayList<Node>(); // Nodes
+	private Instance instance; // Coordinates of the cities
+	private DistanceOracle distances; // Edge lengths between the cities
 	private int population[][]; // Matrix to hold different permutations of possible paths (populations)
+	private int nextPopulation[][]; // The next generation is written in here, then the two are swapped
+	private int used[]; // used[city] == stamp when the city is already in the child being crossed over
+	private int stamp = 0;
+	private SplittableRandom rand; // Every random choice comes from here, so a seed repeats the whole run
+	private ParentSelection selection; // How the parents of the next generation are picked
 	private double fitness[]; // fitness score for each population set
+	private double tourLengths[]; // length of each population set, NaN if it still has to be measured
+	private double nextLengths[]; // Lengths of nextPopulation, swapped along with it
+	private Mutation mutation = Mutation.ADJACENT_SWAP;
 
 	private double bestRecordedDistance = 0; // variable to hold the best recorded distance of a path in the population
 	private double relativeBestDistance = 0;
@@ -19,49 +50,153 @@ public class GeneticAlgorithm {
 	private int relativePath[];
 	private double mutationRate = 1;
 	private int populationCounter = 0;
+	private boolean parallel = false; // Score the population on all cores instead of one
+
+	private ConvergenceTrace trace; // Gets a point for every generation, if set
+	private int traceId;
+
+	// Time spent in each phase of the current generation, only measured while metrics or the Generation event are on
+	private long selectionNanos, crossoverNanos, mutationNanos, fitnessNanos;
+
+	public GeneticAlgorithm(int populationSize, Instance instance) { // Constructor using fields, needs a population size and the instance to solve
+		this(populationSize, instance, RandomStreams.newSeed());
+	}
 
-	public GeneticAlgorithm(int populationSize, ArrayList<Node> nodes) { // Constructor using fields, needs a population size and the array list of nodes
+	public GeneticAlgorithm(int populationSize, Instance instance, long seed) { // Same, but always makes the same run for the same seed
 
 		super();
+		this.rand = new SplittableRandom(seed);
 		this.populationSize = populationSize;
-		this.nodes = nodes;
+		this.instance = instance;
+		this.distances = instance.getDistances();
 
-		population = new int[populationSize][nodes.size()];
+		population = new int[populationSize][instance.size()];
+		nextPopulation = new int[populationSize][instance.size()];
+		used = new int[instance.size()];
+		stamp = 0;
 		fitness = new double[populationSize];
-		bestPath = new int[nodes.size()];
-		relativePath = new int[nodes.size()];
+		tourLengths = new double[populationSize];
+		nextLengths = new double[populationSize];
+		bestPath = new int[instance.size()];
+		relativePath = new int[instance.size()];
+		selection = ParentSelection.create(ParentSelection.Method.ROULETTE, populationSize);
 
 		generatePopulation();
 	}
 
-	public void modifyParameters(int populationSize, ArrayList<Node> nodes) {
+	public void modifyParameters(int populationSize, Instance instance) {
 		this.populationSize = populationSize;
-		this.nodes = nodes;
+		this.instance = instance;
+		this.distances = instance.getDistances();
 
-		population = new int[populationSize][nodes.size()];
+		population = new int[populationSize][instance.size()];
+		nextPopulation = new int[populationSize][instance.size()];
+		used = new int[instance.size()];
+		stamp = 0;
 		fitness = new double[populationSize];
-		bestPath = new int[nodes.size()];
-		relativePath = new int[nodes.size()];
+		tourLengths = new double[populationSize];
+		nextLengths = new double[populationSize];
+		bestPath = new int[instance.size()];
+		relativePath = new int[instance.size()];
+		selection = ParentSelection.create(selection.getMethod(), populationSize);
 
 		generatePopulation();
 	}
 
 
 
-	public int[] runGeneticAlgorithm() {
+	// Runs one generation and returns the best length so far. Nothing is copied, so ask getBestPath() for the path when it's needed
+	public double runGeneticAlgorithm() {
+
+		// Reading the clock around every phase isn't free, so only do it when someone is looking
+		boolean timed = Metrics.isEnabled();
+		SolverEvents.Generation event = null;
+		if(SolverEvents.isRecording()) { // The event class is only touched while Flight Recorder runs (see SolverEvents)
+			event = new SolverEvents.Generation();
+			if(event.isEnabled())
+				timed = true;
+			else
+				event = null;
+		}
+		long start = 0;
+		if(timed) {
+			if(event != null)
+				event.begin();
+			selectionNanos = crossoverNanos = mutationNanos = 0;
+			start = System.nanoTime();
+		}
 
 		calculateFitness();
+		if(trace != null)
+			trace.record(traceId, populationCounter, bestRecordedDistance, relativeBestDistance, getDiversity());
 		normalizeFitness();
-		nextGeneration();
+		if(timed) {
+			long now = System.nanoTime();
+			fitnessNanos = now - start;
+			start = now;
+		}
+		selection.prepare(fitness, tourLengths);
+		if(timed)
+			selectionNanos = System.nanoTime() - start;
+		nextGeneration(timed);
 
-		return bestPath.clone();
+		if(timed)
+			recordGeneration(event);
+		return bestRecordedDistance;
+
+	}
 
+	private void recordGeneration(SolverEvents.Generation event) {
+		GENERATIONS.increment();
+		EVALUATIONS.add(populationSize);
+		SELECTION_NANOS.add(selectionNanos);
+		CROSSOVER_NANOS.add(crossoverNanos);
+		MUTATION_NANOS.add(mutationNanos);
+		FITNESS_NANOS.add(fitnessNanos);
+
+		if(event == null)
+			return;
+		event.end();
+		if(event.shouldCommit()) {
+			event.generation = populationCounter;
+			event.populationSize = populationSize;
+			event.bestLength = bestRecordedDistance;
+			event.selection = selectionNanos;
+			event.crossover = crossoverNanos;
+			event.mutation = mutationNanos;
+			event.fitness = fitnessNanos;
+			event.commit();
+		}
 	}
 
 
-	private void generatePopulation() {
-		Random rand = new Random();
+	@Override
+	public String getName() {
+		return "ga";
+	}
 
+	/*
+	 * Run generations until the token is cancelled (always at least one), and return the best path as a tour.
+	 * The token is checked between generations, so a cancel waits for the current one to finish.
+	 */
+	@Override
+	public int[] solve(CancellationToken token, ProgressListener listener) {
+		listener = Metrics.track(listener);
+		double reported = bestRecordedDistance;
+		do {
+			runGeneticAlgorithm();
+
+			if(bestRecordedDistance != reported) {
+				reported = bestRecordedDistance;
+				listener.improved(getName(), populationCounter, Tours.length(distances, bestPath), token.elapsed());
+			}
+		} while(!token.isCancelled());
+
+		return Tours.canonical(getBestPath());
+	}
+
+	private void generatePopulation() {
+		Arrays.fill(tourLengths, Double.NaN);
 		for(int i = 0; i < population.length; i++) // Setting up population arrays with initial values in sequence 0,1,2,3,4.... etc
 			for(int j = 0; j < population[i].length; j++)
 				population[i][j] = j;
@@ -81,53 +216,63 @@ public class GeneticAlgorithm {
 		arr[y] = temp;
 	}
 
+	/*
+	 * Scores every population set. Children normally arrive with their length already known from
+	 * crossover and mutation; the ones that don't (the first generation, immigrants, and every child in
+	 * parallel mode) are measured here. In parallel mode that happens on the common ForkJoinPool,
+	 * and the shortest one is found with a reduction where every worker keeps its own shortest tour.
+	 * Ties go to the lowest index, so the result is exactly the same as in serial mode.
+	 */
 	private void calculateFitness() {
 
-		if(bestRecordedDistance == 0) {
-			bestRecordedDistance = calcDistance(nodes, population[0]); // Record a starting best distance
-			for(int j = 0; j < population[0].length; j++) // best starting Path
-				bestPath[j] = population[0][j];
+		// Calculating fitness for each population
+		if(parallel) {
+			IntStream.range(0, populationSize).parallel().forEach(this::scoreTour);
+		}
+		else {
+			for(int i = 0; i < populationSize; i++)
+				scoreTour(i);
 		}
 
+		int shortest;
+		if(parallel)
+			shortest = IntStream.range(0, populationSize).parallel().reduce(0, this::shorterTour);
+		else {
+			shortest = 0;
+			for(int i = 1; i < populationSize; i++)
+				shortest = shorterTour(shortest, i);
+		}
 
-		relativeBestDistance = calcDistance(nodes, population[0]); // Record a starting best distance
-		for(int j = 0; j < population[0].length; j++) // best starting Path
-			relativePath[j] = population[0][j];
-
-		// Calculating fitness for each population
-		for(int i = 0; i < populationSize; i++) {
-			double totalDistance = calcDistance(nodes, population[i]);
+		relativeBestDistance = tourLengths[shortest]; // The best path of this generation
+		for(int j = 0; j < population[shortest].length; j++)
+			relativePath[j] = population[shortest][j];
 
-			if(totalDistance < bestRecordedDistance) { // If new best recorded distance is found the update the best path and the best recorded distance value.
-				bestRecordedDistance = totalDistance;
-				for(int j = 0; j < population[i].length; j++)
-					bestPath[j] = population[i][j];
-			}
+		if(bestRecordedDistance == 0 || relativeBestDistance < bestRecordedDistance) { // If new best recorded distance is found the update the best path and the best recorded distance value.
+			bestRecordedDistance = relativeBestDistance;
+			for(int j = 0; j < population[shortest].length; j++)
+				bestPath[j] = population[shortest][j];
+		}
+	}
 
-			if(totalDistance < relativeBestDistance) { // If new best recorded distance is found the update the relative path and the best recorded distance value.
-				relativeBestDistance = totalDistance;
-				for(int j = 0; j < population[i].length; j++)
-					relativePath[j] = population[i][j];
-			}
+	private void scoreTour(int i) {
+		if(Double.isNaN(tourLengths[i]))
+			tourLengths[i] = calcDistance(population[i]);
+		fitness[i] = 1 / (tourLengths[i] + 1);
+	}
 
-			fitness[i] = 1 / (totalDistance + 1);
-		}
+	// Index of the shorter of two population sets, the lower index if they are equally long
+	private int shorterTour(int a, int b) {
+		if(tourLengths[a] < tourLengths[b] || (tourLengths[a] == tourLengths[b] && a < b))
+			return a;
+		return b;
 	}
 
-	private double calcDistance(ArrayList<Node> nodes, int[] order) {
+	double calcDistance(int[] order) { // Package-private for Benchmarks
 		double totalDistance = 0;
-		Node cityA;
-		Node cityB;
 
 		for(int i = 0; i < order.length - 1; i++) {
 
-			int indexCityA = order[i];
-			cityA = nodes.get(indexCityA);
-
-			int indexCityB = order[i + 1];
-			cityB = nodes.get(indexCityB);
-
-			double edgeDistance = Math.hypot(cityA.getX() - cityB.getX(), cityA.getY() - cityB.getY());
+			double edgeDistance = distances.distance(order[i], order[i + 1]);
 			totalDistance += edgeDistance;
 		}
 
@@ -146,89 +291,253 @@ public class GeneticAlgorithm {
 		}
 	}
 
-	private void nextGeneration() {
+	/*
+	 * Breeds the next generation into the spare population array and swaps the two, so no arrays are
+	 * allocated from one generation to the next. In serial mode every child is measured while it is
+	 * crossed over and kept up to date through its mutations; in parallel mode that is left to the
+	 * parallel scoring in calculateFitness(). If timed is set, the time spent in each phase is added up.
+	 */
+	private void nextGeneration(boolean timed) {
 
-		int newPopulation[][] = new int[populationSize][nodes.size()];
-
-		for(int i = 0; i < population.length; i++) {
+		for(int i = 0; i < populationSize; i++) {
 
-			int orderA[] = pickPopulation(population, fitness);
-			int orderB[] = pickPopulation(population, fitness);
+			long t0 = timed ? System.nanoTime() : 0;
+			int indexA = selection.pick(rand);
+			int indexB = selection.pick(rand);
 
-			int order[] = crossOver(orderA, orderB);
+			long t1 = timed ? System.nanoTime() : 0;
+			double length = crossOver(population[indexA], population[indexB], nextPopulation[i], !parallel);
 
- 			mutate(order, mutationRate);
-			newPopulation[i] = order.clone();
+			long t2 = timed ? System.nanoTime() : 0;
+			nextLengths[i] = length + mutate(nextPopulation[i], mutationRate); // NaN stays NaN
 
+			if(timed) {
+				long t3 = System.nanoTime();
+				selectionNanos += t1 - t0;
+				crossoverNanos += t2 - t1;
+				mutationNanos += t3 - t2;
+			}
 		}
 
-		population = newPopulation.clone();
+		int temp[][] = population;
+		population = nextPopulation;
+		nextPopulation = temp;
+		double tempLengths[] = tourLengths;
+		tourLengths = nextLengths;
+		nextLengths = tempLengths;
 		populationCounter++;
 
 	}
 
-	private int[] pickPopulation(int [][] population, double[] fitness) {
+	/*
+	 * Order crossover: the child starts with a random slice of orderA, followed by the rest of the cities
+	 * in the order they come in orderB. Cities already taken from orderA are marked in the used array with
+	 * the current stamp, so the array never has to be cleared. Returns the length of the child, or NaN
+	 * if measure isn't set.
+	 */
+	double crossOver(int[] orderA, int[] orderB, int[] child, boolean measure) { // Package-private for Benchmarks
 
-		int index = 0;
+		int start = rand.nextInt(orderA.length);
+		int end = rand.nextInt(orderA.length - start) + start; // int end = rand.nextInt(start, orderA.length);
 
-		double portion = Math.random();
+		if(++stamp == 0) { // Wrapped around, so old marks could look current
+			Arrays.fill(used, 0);
+			stamp = 1;
+		}
 
-		while(portion > 0) {
-			portion = portion - fitness[index];
-			index++;
+		int length = 0;
+		for(int i = start; i < end; i++) {
+			child[length++] = orderA[i];
+			used[orderA[i]] = stamp;
 		}
-		index--;
 
-		return population[index].clone();
+		for(int i = 0; i < orderB.length; i++) {
+			if(used[orderB[i]] != stamp) {
+				child[length++] = orderB[i];
+			}
+		}
+
+		return measure ? calcDistance(child) : Double.NaN;
 	}
 
-	private int[] crossOver(int[] orderA, int[] orderB) {
 
-		Random rand = new Random();
 
-		int start = rand.nextInt(orderA.length);
-		int end = rand.nextInt(orderA.length - start) + start; // int end = rand.nextInt(start, orderA.length);
+	// Mutates the order in place and returns the change in its length
+	private double mutate(int[] order, double mutationRate) {
 
-		ArrayList<Integer> newOrder = new ArrayList<Integer>();
+		double change = 0;
+		int n = order.length;
 
-		for(int i = start; i < end; i++)
-			newOrder.add(orderA[i]);
+		for(int i = 0; i < n; i++) {
+			if(rand.nextDouble() < mutationRate) {
+				int indexA = rand.nextInt(n);
+				int indexB;
 
+				if(mutation == Mutation.ADJACENT_SWAP) {
+					if((indexA + 1) >= n) {
+						indexB = indexA -1;
+					}
+					else
+						indexB = indexA + 1;
+				}
+				else {
+					indexB = indexA + 1 + rand.nextInt(MUTATION_SPAN); // Somewhere near indexA, on either side
+					if(indexB >= n || rand.nextBoolean())
+						indexB = indexA - (indexB - indexA);
+					if(indexB < 0)
+						continue;
+				}
 
-		for(int i = 0; i < orderA.length; i++) {
-			if(!newOrder.contains(orderB[i])) {
-				newOrder.add(orderB[i]);
+				int low = Math.min(indexA, indexB), high = Math.max(indexA, indexB);
+				switch(mutation) {
+					case TWO_OPT:
+						change += reverse(order, low, high);
+						break;
+					case INSERTION:
+						change += move(order, indexA, indexB);
+						break;
+					default:
+						change += swapAndMeasure(order, low, high);
+				}
 			}
 		}
+		reduceMutationRate();
+		return change;
+	}
+
+	// Length of the edge between the cities at positions i and j, or 0 if either is off the end of the path
+	private double edge(int[] order, int i, int j) {
+		if(i < 0 || j < 0 || i >= order.length || j >= order.length)
+			return 0;
+		return distances.distance(order[i], order[j]);
+	}
 
-		int[] intNewOrder = new int[orderA.length];
+	// Length of the edges touching positions i < j, counting the edge between them once if they are next to each other
+	private double edgesAround(int[] order, int i, int j) {
+		double sum = edge(order, i - 1, i) + edge(order, j, j + 1) + edge(order, j - 1, j);
+		if(j > i + 1)
+			sum += edge(order, i, i + 1);
+		return sum;
+	}
 
-		for(int i = 0; i < newOrder.size(); i++)
-			intNewOrder[i] = newOrder.get(i);
+	private double swapAndMeasure(int[] order, int i, int j) {
+		double before = edgesAround(order, i, j);
+		swap(order, i, j);
+		return edgesAround(order, i, j) - before;
+	}
 
-		return intNewOrder;
+	// Reverse positions i to j (i < j): only the two edges at the ends change
+	private double reverse(int[] order, int i, int j) {
+		double change = edge(order, i - 1, j) + edge(order, i, j + 1) - edge(order, i - 1, i) - edge(order, j, j + 1);
+		for(int a = i, b = j; a < b; a++, b--)
+			swap(order, a, b);
+		return change;
 	}
 
+	// Take the city at position from out of the path and put it back in at position to
+	private double move(int[] order, int from, int to) {
+		int city = order[from];
+		double change = edge(order, from - 1, from + 1) - edge(order, from - 1, from) - edge(order, from, from + 1);
 
+		if(from < to)
+			System.arraycopy(order, from + 1, order, from, to - from);
+		else
+			System.arraycopy(order, to, order, to + 1, from - to);
+		order[to] = city;
 
-	private void mutate(int[] order, double mutationRate) {
+		// The cities now either side of it were next to each other before it went in
+		return change + edge(order, to - 1, to) + edge(order, to, to + 1) - edge(order, to - 1, to + 1);
+	}
 
-		Random rand = new Random();
+	public void setMutation(Mutation mutation) {
+		this.mutation = mutation;
+	}
 
-		for(int i = 0; i < order.length; i++) {
-			if(Math.random() < mutationRate) {
-				int indexA = rand.nextInt(order.length);
-				int indexB;
-				if((indexA + 1) >= order.length) {
-					indexB = indexA -1;
-				}
-				else
-					indexB = indexA + 1;
+	public Mutation getMutation() {
+		return mutation;
+	}
+
+	public void setSelection(ParentSelection.Method method) {
+		selection = ParentSelection.create(method, populationSize);
+	}
+
+	public ParentSelection.Method getSelection() {
+		return selection.getMethod();
+	}
 
-				swap(order, indexA, indexB);
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/*
+	 * Put a copy of a tour from somewhere else (another island of an IslandModel) into the population,
+	 * in place of a random member. Call it between generations.
+	 */
+	public void immigrate(int[] tour) {
+		int index = rand.nextInt(populationSize);
+		for(int j = 0; j < tour.length; j++)
+			population[index][j] = tour[j];
+		tourLengths[index] = Double.NaN;
+	}
+
+	// Record the best and relative best distance and the diversity of every generation from now on (null to stop)
+	public void setTrace(ConvergenceTrace trace) {
+		setTrace(trace, getName());
+	}
+
+	// Same, under another name, to tell several genetic algorithms apart in one trace
+	public void setTrace(ConvergenceTrace trace, String name) {
+		this.trace = trace;
+		if(trace != null)
+			traceId = trace.solverId(name);
+	}
+
+	/*
+	 * How different the population sets are: the standard deviation of their lengths divided by the mean
+	 * (the coefficient of variation). It drops towards 0 as the population converges on one path.
+	 * Sets that haven't been measured yet are left out.
+	 */
+	public double getDiversity() {
+		double sum = 0, sumOfSquares = 0;
+		int count = 0;
+		for(int i = 0; i < populationSize; i++) {
+			double length = tourLengths[i];
+			if(!Double.isNaN(length)) {
+				sum += length;
+				sumOfSquares += length * length;
+				count++;
 			}
 		}
-		reduceMutationRate();
+		if(count == 0)
+			return Double.NaN;
+
+		double mean = sum / count;
+		double variance = Math.max(0, sumOfSquares / count - mean * mean);
+		return Math.sqrt(variance) / mean;
+	}
+
+	/*
+	 * Replace the first population set with a copy of a tour from a construction heuristic (HilbertCurve
+	 * makes one in near-linear time), so the search starts from one good path instead of only random ones.
+	 * Call it before the first generation.
+	 */
+	public void seedPopulation(int[] tour) {
+		for(int j = 0; j < tour.length; j++)
+			population[0][j] = tour[j];
+		tourLengths[0] = Double.NaN;
+	}
+
+	// Score the population as it is, without breeding the next one, so getBestPath() is set before the first generation
+	public void scorePopulation() {
+		calculateFitness();
+	}
+
+	public int[] getBestPath() {
+		return bestPath.clone();
 	}
 
 	public double getBestRecordedDistance() {
@@ -258,11 +567,11 @@ public class GeneticAlgorithm {
 	}
 
 	public int getNumberOfNodes() {
-		return nodes.size();
+		return instance.size();
 	}
 
-	public ArrayList<Node> getNodes() {
-		return nodes;
+	public Instance getInstance() {
+		return instance;
 	}
 
 	public void resetBestRecordedDistance() {
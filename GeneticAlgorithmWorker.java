@@ -0,0 +1,120 @@
+// Background thread that runs the genetic algorithm as fast as it can while the window shows its progress
+// CSC 242-01
+// December 7, 2021
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * The worker owns the GeneticAlgorithm while it runs: generations are run back to back on the worker
+ * thread, and nothing else may touch the algorithm until stop() has returned. Progress is handed over
+ * as immutable snapshots through an AtomicReference, so the JavaFX thread can read the latest one on
+ * every frame without waiting for a generation to finish. Snapshots are made at most every
+ * PUBLISH_INTERVAL, since nobody looks at them faster than the screen refreshes.
+ */
+public class GeneticAlgorithmWorker {
+    private static final long PUBLISH_INTERVAL = 10_000_000L; // Nanoseconds
+
+    // Everything the window draws for one point in the run
+    public static class Snapshot {
+        private final Instance instance;
+        private final int[] bestPath;
+        private final double bestDistance;
+        private final int[] relativePath;
+        private final double relativeDistance;
+        private final int populationCount;
+
+        Snapshot(GeneticAlgorithm geneticAlgo) {
+            instance = geneticAlgo.getInstance();
+            bestPath = geneticAlgo.getBestPath();
+            bestDistance = geneticAlgo.getBestRecordedDistance();
+            relativePath = geneticAlgo.getRelativePath();
+            relativeDistance = geneticAlgo.getRelativeBestDistance();
+            populationCount = geneticAlgo.getPopulationCount();
+        }
+
+        public Instance getInstance() {
+            return instance;
+        }
+
+        // The arrays are shared, not copied: don't change them
+        public int[] getBestPath() {
+            return bestPath;
+        }
+
+        public double getBestDistance() {
+            return bestDistance;
+        }
+
+        public int[] getRelativePath() {
+            return relativePath;
+        }
+
+        public double getRelativeDistance() {
+            return relativeDistance;
+        }
+
+        // Generations run so far, which also tells snapshots apart
+        public int getPopulationCount() {
+            return populationCount;
+        }
+    }
+
+    private final AtomicReference<Snapshot> latest = new AtomicReference<>();
+    private Thread thread;
+    private volatile boolean running;
+
+    // Start running generations of geneticAlgo on a new thread, stopping the previous run first
+    public void start(GeneticAlgorithm geneticAlgo) {
+        stop();
+        latest.set(null);
+        running = true;
+
+        thread = new Thread(() -> run(geneticAlgo), "genetic-algorithm");
+        thread.setDaemon(true); // Don't keep the program alive after the window closes
+        thread.start();
+    }
+
+    // Stop after the current generation and wait for it, so the algorithm can be used again
+    public void stop() {
+        running = false;
+        if (thread == null)
+            return;
+
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Latest snapshot, or null if no generation has finished since start(). Never blocks
+    public Snapshot getLatest() {
+        return latest.get();
+    }
+
+    private void run(GeneticAlgorithm geneticAlgo) {
+        long lastPublished = 0;
+
+        while (running) {
+            geneticAlgo.runGeneticAlgorithm();
+
+            long now = System.nanoTime();
+            if (latest.get() == null || now - lastPublished >= PUBLISH_INTERVAL) {
+                latest.set(new Snapshot(geneticAlgo));
+                lastPublished = now;
+            }
+        }
+
+        latest.set(new Snapshot(geneticAlgo)); // The final state, whenever the last generation finished
+    }
+}
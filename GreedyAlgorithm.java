@@ -4,95 +4,354 @@
 // December 7, 2021
 
 import java.util.ArrayList;
-import java.util.Comparator;
-
-public class GreedyAlgorithm {
-    private ArrayList<Node> nodes;
-    private ArrayList<Edge> edges;
+import java.util.Arrays;
+
+/*
+ * The greedy heuristic adds edges from shortest to longest, skipping any edge that would give a city
+ * a third connection or close a cycle before every city is in it.
+ *
+ * Looking at every edge of the complete graph needs n(n-1)/2 edges in memory, so only the edges from
+ * each city to its k nearest neighbours are considered. Each one is packed into a long (the length's
+ * float bits on top, its position in the candidate lists below), so sorting them is a primitive sort
+ * of a long[]. Cycles are detected with a union-find over the fragments built so far.
+ *
+ * The candidate edges usually leave the tour in a number of fragments. These are joined by running
+ * the same greedy pass on the fragment endpoints only, with their own nearest neighbour lists,
+ * until one path is left, and the path is then closed into a tour.
+ */
+public class GreedyAlgorithm implements Solver {
+    public static final int DEFAULT_CANDIDATES = 10; // Nearest neighbours considered for every city
+
+    // Below this many fragment endpoints, every edge between two of them is considered
+    private static final int SMALL_ENDPOINT_COUNT = 64;
+
+    private static final Metrics.Counter EDGES_CONSIDERED = Metrics.counter("greedy.edges_considered");
+    private static final Metrics.Counter CYCLE_CHECKS = Metrics.counter("greedy.cycle_checks");
+    private static final Metrics.Counter FIND_STEPS = Metrics.counter("greedy.find_steps");
+
+    private Instance instance;
+    private DistanceOracle distances;
+    private int candidateCount;
+    private CandidateLists candidates;
+    private long[] candidateEdges; // Packed candidate edges, sorted from shortest to longest
     private ArrayList<Edge> tspPath;
+    private StepQueue steps; // If set, every edge is put in here as soon as it is added
+
+    // Working state of calcPath()
+    private byte[] degree; // Number of edges in the path at every city
+    private int[] parent; // Union-find forest over the fragments
+    private int[] fragmentSize; // Number of cities below each union-find root
+    private long edgesConsidered; // Calls to addEdge()
+    private long cycleChecks; // Edges that got as far as the union-find
+    private long findSteps; // Parent links followed in find(), which is what the cycle checks cost
+
+    public GreedyAlgorithm(Instance instance) {
+        this(instance, DEFAULT_CANDIDATES);
+    }
 
-    public GreedyAlgorithm(ArrayList<Node> nodes) {
-        setNodes(nodes);
+    public GreedyAlgorithm(Instance instance, int candidateCount) {
+        this.candidateCount = candidateCount;
+        setInstance(instance);
 
-        makeCompleteGraph();
+        makeCandidateGraph();
     }
 
-    public void modifyNodes(ArrayList<Node> nodes) {
-    	setNodes(nodes);
+    public void modifyInstance(Instance instance) {
+    	setInstance(instance);
 
-        makeCompleteGraph();
+        makeCandidateGraph();
     }
 
 
     // Setters and getters
 
-    public ArrayList<Node> getNodes() {
-        return nodes;
+    public Instance getInstance() {
+        return instance;
+    }
+
+    public void setInstance(Instance instance) {
+        this.instance = instance;
+        this.distances = instance.getDistances();
     }
 
-    public void setNodes(ArrayList<Node> nodes) {
-        this.nodes = nodes;
+    @Override
+    public String getName() {
+        return "greedy";
     }
 
-    // Make connections between every node created in the Main Class. Put all edges in an array
-    public void makeCompleteGraph() {
+    @Override
+    public int[] solve(CancellationToken token, ProgressListener listener) {
+        listener = Metrics.track(listener);
+        int[] tour = Tours.canonical(Tours.fromEdges(calcPath(token), instance.size()));
+        if (listener != ProgressListener.NONE) // Measuring the tour is O(n), so only if someone is listening
+            listener.improved(getName(), tour.length, Tours.length(distances, tour), token.elapsed());
+        return tour;
+    }
+
+    // Send the edges to the queue while calcPath() runs, and finish it at the end (null to stop)
+    public void setStepQueue(StepQueue steps) {
+        this.steps = steps;
+    }
 
-        edges = new ArrayList<>();
+    public CandidateLists getCandidates() {
+        return candidates;
+    }
 
-        // Nested for loops will create only one connection between every possible combination of nodes
-        for (int i = 0; i < nodes.size() - 1; i++) {
-            for (int j = i + 1; j < nodes.size(); j++) {
-                edges.add(new Edge(i, j));
+    // Find the nearest neighbours of every node and put the edges to them in a sorted array
+    public void makeCandidateGraph() {
+        candidates = new CandidateLists(instance, candidateCount);
+        int k = candidates.getK();
+
+        long[] packed = new long[instance.size() * k];
+        int count = 0;
+
+        for (int i = 0; i < instance.size(); i++) {
+            for (int slot = 0; slot < k; slot++) {
+                int j = candidates.get(i, slot);
+
+                // An edge on both cities' lists is only added once, from the city with the lower index
+                if (i < j || !candidates.contains(j, i))
+                    packed[count++] = pack(calcEdgeLength(i, j), i * k + slot);
             }
         }
 
-        // Sort all edges in the array.
-        edges.sort(new EdgeComparator());
+        candidateEdges = Arrays.copyOf(packed, count);
+        Arrays.parallelSort(candidateEdges);
     }
 
     // Create ordered list of the edges to be added to the graph, from shortest to longest
     public ArrayList<Edge> calcPath() {
+        return calcPath(new CancellationToken());
+    }
+
+    // If the token is cancelled before the path is done, the fragments so far are joined in index order
+    public ArrayList<Edge> calcPath(CancellationToken token) {
+        SolverEvents.GreedyConstruction event = null;
+        if (SolverEvents.isRecording()) { // The event class is only touched while Flight Recorder runs (see SolverEvents)
+            event = new SolverEvents.GreedyConstruction();
+            event.begin();
+        }
+        int n = instance.size();
         tspPath = new ArrayList<>();
+        edgesConsidered = cycleChecks = findSteps = 0;
+
+        degree = new byte[n];
+        parent = new int[n];
+        fragmentSize = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            fragmentSize[i] = 1;
+        }
 
-        // 2D array to keep track of node connections.
-        // Second index holds a maximum of two other nodes that the node represented by the first index is connected to.
-        int[][] connectedNodes = new int[nodes.size()][2];
+        // Go through the sorted candidate edges, adding each one that keeps the path valid.
+        // Stop once the edges form a single path through every node.
+        int k = candidates.getK();
+        for (int i = 0; i < candidateEdges.length && tspPath.size() < n - 1; i++) {
+            if ((i & (CancellationToken.CHECK_INTERVAL - 1)) == 0 && token.isCancelled())
+                break;
+            int position = (int) candidateEdges[i];
+            addEdge(position / k, candidates.get(position / k, position % k));
+        }
+
+        joinFragments(token);
+
+        // Close the path into a tour
+        if (n > 2) {
+            int first = -1, last = -1;
+            for (int i = 0; i < n; i++) {
+                if (degree[i] < 2) {
+                    if (first < 0)
+                        first = i;
+                    else
+                        last = i;
+                }
+            }
+            tspPath.add(new Edge(first, last));
+            if (steps != null)
+                steps.put(first, last);
+        }
+
+        if (steps != null)
+            steps.finish();
+        recordRun(event);
+        return tspPath;
+    }
 
-        for (int a = 0; a < nodes.size(); a++)
-            for (int b = 0; b < 2; b++)
-                connectedNodes[a][b] = -1;
+    private void recordRun(SolverEvents.GreedyConstruction event) {
+        EDGES_CONSIDERED.add(edgesConsidered);
+        CYCLE_CHECKS.add(cycleChecks);
+        FIND_STEPS.add(findSteps);
+
+        if (event == null)
+            return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.nodes = instance.size();
+            event.edgesConsidered = edgesConsidered;
+            event.cycleChecks = cycleChecks;
+            event.findSteps = findSteps;
+            event.commit();
+        }
+    }
 
+    public long getEdgesConsidered() {
+        return edgesConsidered;
+    }
 
-        // Go through sorted list of edges, add them to path from shortest to longest
-        //   provided each node is only visited twice (path to the node, path from the node).
-        //   Stop the for loop when tspPath has accounted for every node.
-        for (int i = 0; i < edges.size() && tspPath.size() < nodes.size(); i++) {
-            int index1 = edges.get(i).getNode1Index();
-            int index2 = edges.get(i).getNode2Index();
+    public long getCycleChecks() {
+        return cycleChecks;
+    }
 
-            if (connectedNodes[index1][1] < 0 && connectedNodes[index2][1] < 0) {
+    // Add the edge between two nodes if both have fewer than two connections and it doesn't close a cycle
+    private boolean addEdge(int index1, int index2) {
+        edgesConsidered++;
+        if (degree[index1] >= 2 || degree[index2] >= 2)
+            return false;
+
+        cycleChecks++;
+        int root1 = find(index1), root2 = find(index2);
+        if (root1 == root2)
+            return false;
+
+        // Union by size: hang the smaller fragment below the larger one
+        if (fragmentSize[root1] < fragmentSize[root2]) {
+            int temp = root1;
+            root1 = root2;
+            root2 = temp;
+        }
+        parent[root2] = root1;
+        fragmentSize[root1] += fragmentSize[root2];
+
+        degree[index1]++;
+        degree[index2]++;
+        tspPath.add(new Edge(index1, index2));
+        if (steps != null)
+            steps.put(index1, index2);
+        return true;
+    }
 
-                // Check to make sure this edge wouldn't make a cycle without every node included
-                int checkCycle = hasCycle(index2, index1, connectedNodes);
+    // Root of the fragment a node is in, halving the path to it on the way
+    private int find(int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+            findSteps++;
+        }
+        return node;
+    }
 
-                if (checkCycle == 0 || checkCycle == nodes.size() - 1){
-                    tspPath.add(edges.get(i));
+    /*
+     * Join the fragments left over after the candidate edges into a single path.
+     * Each round collects the endpoints of all fragments (nodes with fewer than two connections)
+     * and runs the greedy pass over the edges between nearby endpoints. As long as every endpoint looks
+     * at its two nearest other endpoints, at least one of them is in a different fragment, so every
+     * round joins at least two fragments.
+     */
+    private void joinFragments(CancellationToken token) {
+        int n = instance.size();
+        int neighbourCount = Math.max(2, candidateCount);
+
+        while (tspPath.size() < n - 1) {
+            if (token.isCancelled()) {
+                chainFragments();
+                return;
+            }
 
-                    // Conditional operator: if the index 0 is empty, fill index 0, else fill index 1
-                    connectedNodes[index1][connectedNodes[index1][0] < 0 ? 0 : 1] = index2;
-                    connectedNodes[index2][connectedNodes[index2][0] < 0 ? 0 : 1] = index1;
+            int endpointCount = 0;
+            int[] endpoints = new int[n];
+            for (int i = 0; i < n; i++)
+                if (degree[i] < 2)
+                    endpoints[endpointCount++] = i;
+            endpoints = Arrays.copyOf(endpoints, endpointCount);
+
+            int[] from, to;
+            int edgeCount = 0;
+
+            if (endpointCount <= SMALL_ENDPOINT_COUNT) {
+                from = new int[endpointCount * (endpointCount - 1) / 2];
+                to = new int[from.length];
+                for (int a = 0; a < endpointCount; a++) {
+                    for (int b = a + 1; b < endpointCount; b++) {
+                        from[edgeCount] = endpoints[a];
+                        to[edgeCount++] = endpoints[b];
+                    }
+                }
+            } else {
+                KdTree tree = new KdTree(instance, endpoints);
+                int k = Math.min(neighbourCount, endpointCount - 1);
+                int[] ids = new int[k];
+                double[] squaredDistances = new double[k];
+
+                from = new int[endpointCount * k];
+                to = new int[from.length];
+                for (int endpoint : endpoints) {
+                    int found = tree.kNearest(endpoint, k, ids, squaredDistances);
+                    for (int i = 0; i < found; i++) {
+                        if (find(endpoint) != find(ids[i])) {
+                            from[edgeCount] = endpoint;
+                            to[edgeCount++] = ids[i];
+                        }
+                    }
                 }
             }
 
+            long[] packed = new long[edgeCount];
+            for (int i = 0; i < edgeCount; i++)
+                packed[i] = pack(calcEdgeLength(from[i], to[i]), i);
+            Arrays.parallelSort(packed);
+
+            int before = tspPath.size();
+            for (int i = 0; i < edgeCount && tspPath.size() < n - 1; i++)
+                addEdge(from[(int) packed[i]], to[(int) packed[i]]);
+
+            if (tspPath.size() == before) // Can't happen, but never loop forever
+                neighbourCount *= 2;
         }
+    }
 
-        return tspPath;
+    // Join the fragments end to end in index order, whatever the edges cost. For when there's no time left
+    private void chainFragments() {
+        int n = instance.size();
+        int[] neighbours = new int[2 * n]; // The (up to) two neighbours of every node in the path
+        Arrays.fill(neighbours, -1);
+        for (Edge edge : tspPath) {
+            int a = edge.getNode1Index(), b = edge.getNode2Index();
+            neighbours[neighbours[2 * a] < 0 ? 2 * a : 2 * a + 1] = b;
+            neighbours[neighbours[2 * b] < 0 ? 2 * b : 2 * b + 1] = a;
+        }
+
+        boolean[] seen = new boolean[n];
+        int tail = -1; // Loose end of the fragments joined so far
+        for (int start = 0; start < n; start++) {
+            if (seen[start] || degree[start] >= 2)
+                continue;
+
+            // Walk to the other end of this fragment
+            int previous = -1, current = start;
+            while (true) {
+                seen[current] = true;
+                int next = neighbours[2 * current] != previous ? neighbours[2 * current] : neighbours[2 * current + 1];
+                if (next < 0)
+                    break;
+                previous = current;
+                current = next;
+            }
+
+            if (tail >= 0)
+                addEdge(tail, start);
+            tail = current;
+        }
+    }
+
+    // Pack an edge into a long that sorts by length: the float bits of a non-negative length sort like ints
+    private static long pack(double length, int index) {
+        return ((long) Float.floatToIntBits((float) length) << 32) | index;
     }
 
 
     // Calculate the length of an edge
-    public double calcEdgeLength(Node nodeA, Node nodeB) {
-        return Math.hypot(nodeA.getX() - nodeB.getX(), nodeA.getY() - nodeB.getY());
+    public double calcEdgeLength(int nodeA, int nodeB) {
+        return distances.distance(nodeA, nodeB);
     }
 
     public class Edge {
@@ -102,7 +361,7 @@ public class GreedyAlgorithm {
         public Edge(int node1Index, int node2Index) {
             this.node1Index = node1Index;
             this.node2Index = node2Index;
-            length = calcEdgeLength(nodes.get(node1Index), nodes.get(node2Index));
+            length = calcEdgeLength(node1Index, node2Index);
         }
 
         public int getNode1Index() {
@@ -122,60 +381,4 @@ public class GreedyAlgorithm {
             return "From node " + node1Index + " to node " + node2Index + ": " + length;
         }
     }
-
-    public class EdgeComparator implements Comparator<Edge> {
-        @Override
-        public int compare(Edge edge1, Edge edge2) {
-            double length1 = edge1.getLength();
-            double length2 = edge2.getLength();
-
-            if (length1 < length2)
-                return -1;
-            if (length1 > length2)
-                return 1;
-            return 0;
-        }
-    }
-
-    /*
-     * Recursive function similar to a Depth-First Search.
-     * For a given edge (with two nodes) to be added to tspPath, input one node as nodeIndex, another as targetNode.
-     * If there is another edge connected to nodeIndex, follow it.
-     * If the path leads back to targetNode, then there would be a cycle if we added that edge.
-     * The number matters:
-     *  If the number of nodes in the cycle is less than the total number of nodes, that's a problem.
-     *  If all nodes are included in the cycle, then we have our Hamiltonian path, and we should add the edge.
-     *
-     * Returns 0 if there is no cycle. If there is a cycle, return the number of nodes in the cycle.
-     */
-    public int hasCycle(int nodeIndex, int targetNode, final int[][] connectedNodes) {
-        // Note:
-        // If connectedNodes[nodeIndex][1] had a value, that would mean this node already has two connections,
-        //    meaning we wouldn't be in this function to begin with.
-
-        if (connectedNodes[nodeIndex][0] == -1)
-            return 0;
-
-        int counter = 1;// For counting how many nodes we pass by.
-        return hasCycle(connectedNodes[nodeIndex][0], nodeIndex, targetNode, connectedNodes, counter);
-    }
-
-    // Continuing the above function, this time with parentNodeIndex, representing the node that was just handled.
-    public int hasCycle(int nodeIndex, int parentNodeIndex, int targetNode, final int[][] connectedNodes, int counter) {
-        int nextNode = -1;
-        for (int i = 0; i < 2; i++) {
-            int connection = connectedNodes[nodeIndex][i]; // for simplifying the references
-            // If this node has a connection other than the node we just came from:
-            if (connection != parentNodeIndex && connection != -1){
-                nextNode = connection;
-                if (nextNode == targetNode)
-                    return ++counter;
-            }
-        }
-
-        if (nextNode == -1)
-            return 0;
-        counter++;
-        return hasCycle(nextNode, nodeIndex, targetNode, connectedNodes, counter);
-    }
 }
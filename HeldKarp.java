@@ -0,0 +1,357 @@
+// Exact solver for small instances, using Held and Karp's dynamic programming over subsets
+// CSC 242-01
+// December 7, 2021
+
+import java.util.stream.IntStream;
+
+/*
+ * The tour starts at city 0. cost[mask][j] is the length of the shortest path that leaves city 0,
+ * visits exactly the cities in mask and ends at city j (which is in mask). A path over mask ending at j
+ * has to come from a path over mask without j, so
+ *
+ *     cost[mask][j] = min over k in mask - {j} of cost[mask - {j}][k] + d(k, j)
+ *
+ * and the best tour closes the cheapest full path back to city 0. That is O(2^n n^2) time instead of
+ * trying all (n-1)! orders, which makes up to MAX_NODES cities practical.
+ *
+ * The table is one flat primitive array indexed by mask * m + j, where m is the number of cities other
+ * than the start. Every mask only depends on masks with one city fewer, so the table is filled one layer
+ * of equally sized masks at a time; the masks of a layer are listed with Gosper's hack and, in parallel
+ * mode, split across the common ForkJoinPool. There is no parent table: once the table is full, the tour
+ * is walked back from the end by working out again which k gave each minimum.
+ *
+ * At 25 cities the table has 24 * 2^24 entries, which is 3.2 GB of doubles. The table may take up to the
+ * memory limit (half the heap by default), or the heap that is free if that is less. When the doubles
+ * would take more, the table is kept as floats instead, which halves it. The tour then comes from float
+ * sums, so among tours whose lengths differ by less than float rounding it may not pick the very shortest;
+ * its length is always measured again in doubles. When even the floats don't fit, solve() gives the
+ * nearest neighbour tour instead (see fits()), and the portfolio leaves Held-Karp out.
+ *
+ * The same search finds the best order of a few cities between two fixed ones, which improve() uses to
+ * re-order short windows of a longer tour optimally.
+ */
+public class HeldKarp implements Solver {
+    public static final int MAX_NODES = 25;
+    public static final int DEFAULT_WINDOW = 10; // Cities re-ordered at a time by improve()
+    public static final int MAX_WINDOW = MAX_NODES - 1;
+    private static final int PARALLEL_LAYER = 1 << 12; // Smallest layer that is split across cores
+    private static final double EPSILON = 1e-7;
+
+    private final Instance instance;
+    private final DistanceOracle distances;
+    private boolean parallel = false;
+    private long memoryLimit = Runtime.getRuntime().maxMemory() / 2; // Bytes a table of doubles may take
+    private boolean usedFloats; // Whether the last search had to keep its table as floats
+    private boolean exact; // Whether the last solve() found the optimal tour rather than falling back
+
+    public HeldKarp(Instance instance) {
+        this.instance = instance;
+        this.distances = instance.getDistances();
+    }
+
+    @Override
+    public String getName() {
+        return "heldkarp";
+    }
+
+    @Override
+    public Instance getInstance() {
+        return instance;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    // Most bytes the table may take. It is kept as floats when a table of doubles would take more
+    public void setMemoryLimit(long bytes) {
+        memoryLimit = bytes;
+    }
+
+    public boolean isUsingFloats() {
+        return usedFloats;
+    }
+
+    // Whether the last solve() returned the optimal tour, rather than the nearest neighbour one
+    public boolean isExact() {
+        return exact;
+    }
+
+    // Whether the instance is small enough to solve exactly, with a table that fits in memory right now
+    public boolean fits() {
+        int n = instance.size();
+        return n <= 3 || (n <= MAX_NODES && tableEntries(n - 1) * Float.BYTES <= availableMemory());
+    }
+
+    /*
+     * If the instance doesn't fit (see fits()), or the token is cancelled before the table is full,
+     * the nearest neighbour tour is returned instead.
+     */
+    @Override
+    public int[] solve(CancellationToken token, ProgressListener listener) {
+        listener = Metrics.track(listener);
+        exact = false;
+        if (!fits())
+            return new TSPNearestNeighbour(instance).solve(token);
+        int[] tour;
+        try {
+            tour = calcTour(token);
+        } catch (IllegalStateException ex) { // Something else took the heap between fits() and the allocation
+            tour = null;
+        }
+        if (tour == null)
+            return new TSPNearestNeighbour(instance).solve(token);
+        exact = true;
+
+        tour = Tours.canonical(tour);
+        if (listener != ProgressListener.NONE)
+            listener.improved(getName(), tour.length, Tours.length(distances, tour), token.elapsed());
+        return tour;
+    }
+
+    // The shortest tour, starting at city 0, or null if the token was cancelled first
+    public int[] calcTour(CancellationToken token) {
+        int n = instance.size();
+        if (n > MAX_NODES)
+            throw new IllegalArgumentException("Held-Karp takes at most " + MAX_NODES + " nodes, not " + n);
+
+        int[] tour = new int[n];
+        for (int i = 0; i < n; i++)
+            tour[i] = i;
+        if (n <= 3)
+            return tour; // Every order is the same tour
+
+        int[] middle = new int[n - 1];
+        System.arraycopy(tour, 1, middle, 0, n - 1);
+        int[] path = optimalPath(0, middle, 0, token);
+        if (path == null)
+            return null;
+
+        System.arraycopy(path, 0, tour, 1, n - 1);
+        return tour;
+    }
+
+    /*
+     * Order of the middle cities that gives the shortest path from start through all of them to end
+     * (end may be the same as start, which makes it a tour). Returns null if the token is cancelled first,
+     * and throws IllegalStateException if the table doesn't fit in memory even as floats.
+     */
+    public int[] optimalPath(int start, int[] middle, int end, CancellationToken token) {
+        int m = middle.length;
+        if (m > MAX_NODES - 1)
+            throw new IllegalArgumentException("Held-Karp takes at most " + (MAX_NODES - 1) + " cities between the ends, not " + m);
+        if (m <= 1)
+            return middle.clone();
+
+        // Distances between the cities of this search: the middle ones are 0..m-1, then start and end
+        int size = m + 2;
+        double[] d = new double[size * size];
+        int[] cities = new int[size];
+        System.arraycopy(middle, 0, cities, 0, m);
+        cities[m] = start;
+        cities[m + 1] = end;
+        for (int a = 0; a < size; a++)
+            for (int b = 0; b < size; b++)
+                d[a * size + b] = distances.distance(cities[a], cities[b]);
+
+        long entries = tableEntries(m);
+        long available = availableMemory();
+        if (entries * Float.BYTES > available)
+            throw new IllegalStateException("Held-Karp over " + m + " cities needs " + (entries * Float.BYTES >> 20)
+                    + " MB for its table, more than the " + (available >> 20) + " MB it may use");
+        usedFloats = entries * Double.BYTES > available;
+        double[] costs = usedFloats ? null : new double[(int) entries];
+        float[] floatCosts = usedFloats ? new float[(int) entries] : null;
+
+        // Paths of one city come straight from the start
+        for (int j = 0; j < m; j++) {
+            int index = (1 << j) * m + j;
+            if (usedFloats)
+                floatCosts[index] = (float) d[m * size + j];
+            else
+                costs[index] = d[m * size + j];
+        }
+
+        // The middle layers of a big table take seconds each, so the token is checked every CHECK_INTERVAL masks
+        for (int count = 2; count <= m; count++) {
+            if (token.isCancelled())
+                return null;
+
+            int[] layer = layer(m, count);
+            if (parallel && layer.length >= PARALLEL_LAYER) {
+                int chunks = (layer.length + CancellationToken.CHECK_INTERVAL - 1) / CancellationToken.CHECK_INTERVAL;
+                IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                    if (token.isCancelled())
+                        return;
+                    int chunkEnd = Math.min(layer.length, (chunk + 1) * CancellationToken.CHECK_INTERVAL);
+                    for (int i = chunk * CancellationToken.CHECK_INTERVAL; i < chunkEnd; i++)
+                        fill(layer[i], m, d, size, costs, floatCosts);
+                });
+            } else {
+                for (int i = 0; i < layer.length; i++) {
+                    if ((i & (CancellationToken.CHECK_INTERVAL - 1)) == 0 && i > 0 && token.isCancelled())
+                        return null;
+                    fill(layer[i], m, d, size, costs, floatCosts);
+                }
+            }
+        }
+        if (token.isCancelled()) // A parallel layer may have stopped part way
+            return null;
+
+        // Close the cheapest full path at the end, then walk back through the table
+        int full = (1 << m) - 1;
+        int last = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < m; j++) {
+            double length = cost(costs, floatCosts, full * m + j) + d[j * size + m + 1];
+            if (length < best) {
+                best = length;
+                last = j;
+            }
+        }
+
+        int[] path = new int[m];
+        int mask = full;
+        for (int position = m - 1; position > 0; position--) {
+            path[position] = middle[last];
+            mask ^= 1 << last;
+            last = cheapestPrevious(mask, last, m, d, size, costs, floatCosts);
+        }
+        path[0] = middle[last];
+        return path;
+    }
+
+    // Entries in the table of a search over m middle cities
+    private static long tableEntries(int m) {
+        return (long) m << m;
+    }
+
+    // Bytes the table may take: the memory limit, or less if that much of the heap isn't free right now
+    private long availableMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return Math.min(memoryLimit, freeHeap);
+    }
+
+    // Fill in cost[mask][j] for every j in the mask
+    private static void fill(int mask, int m, double[] d, int size, double[] costs, float[] floatCosts) {
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            int j = Integer.numberOfTrailingZeros(rest);
+            int previous = mask ^ (1 << j);
+            int k = cheapestPrevious(previous, j, m, d, size, costs, floatCosts);
+            double length = cost(costs, floatCosts, previous * m + k) + d[k * size + j];
+
+            if (floatCosts != null)
+                floatCosts[mask * m + j] = (float) length;
+            else
+                costs[mask * m + j] = length;
+        }
+    }
+
+    // The city k in mask whose path over mask, plus the edge from k to j, is shortest
+    private static int cheapestPrevious(int mask, int j, int m, double[] d, int size, double[] costs, float[] floatCosts) {
+        int bestK = -1;
+        double best = Double.POSITIVE_INFINITY;
+        int base = mask * m;
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            int k = Integer.numberOfTrailingZeros(rest);
+            double length = cost(costs, floatCosts, base + k) + d[k * size + j];
+            if (length < best) {
+                best = length;
+                bestK = k;
+            }
+        }
+        return bestK;
+    }
+
+    private static double cost(double[] costs, float[] floatCosts, int index) {
+        return floatCosts != null ? floatCosts[index] : costs[index];
+    }
+
+    // Every mask of m bits with count bits set, in increasing order (Gosper's hack)
+    private static int[] layer(int m, int count) {
+        int[] masks = new int[(int) binomial(m, count)];
+        int mask = (1 << count) - 1;
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = mask;
+            int lowest = mask & -mask;
+            int ripple = mask + lowest;
+            mask = (((ripple ^ mask) >>> 2) / lowest) | ripple;
+        }
+        return masks;
+    }
+
+    private static long binomial(int n, int k) {
+        long result = 1;
+        for (int i = 1; i <= k; i++)
+            result = result * (n - k + i) / i;
+        return result;
+    }
+
+    // Window improve() really uses on a tour of n cities: at most n - 2, and small enough for its table to fit
+    public int windowFor(int window, int n) {
+        window = Math.min(window, Math.min(n - 2, MAX_WINDOW));
+        while (window > 2 && tableEntries(window) * Float.BYTES > availableMemory())
+            window--;
+        return window;
+    }
+
+    /*
+     * Local search: slide a window of the given number of cities along the tour, replacing the order of
+     * the cities in it with the best order between the two cities either side of it, until a whole pass
+     * finds nothing shorter. Windows overlap by half, so cities can move across window edges. The window
+     * must be 2 to MAX_WINDOW cities, and is made smaller on short tours or if its table wouldn't fit in
+     * memory (see windowFor()). The given array is not changed.
+     */
+    public int[] improve(int[] order, int window, CancellationToken token) {
+        if (window < 2 || window > MAX_WINDOW)
+            throw new IllegalArgumentException("The window must be 2 to " + MAX_WINDOW + " cities, not " + window);
+        int n = order.length;
+        int[] tour = order.clone();
+        window = windowFor(window, n);
+        if (window < 2)
+            return tour;
+
+        int step = Math.max(1, window / 2);
+        int[] middle = new int[window];
+        boolean improved = true;
+        while (improved && !token.isCancelled()) {
+            improved = false;
+
+            for (int i = 0; i < n && !token.isCancelled(); i += step) {
+                int start = tour[(i + n - 1) % n], end = tour[(i + window) % n];
+                double before = 0;
+                int previous = start;
+                for (int w = 0; w < window; w++) {
+                    middle[w] = tour[(i + w) % n];
+                    before += distances.distance(previous, middle[w]);
+                    previous = middle[w];
+                }
+                before += distances.distance(previous, end);
+
+                int[] path = optimalPath(start, middle, end, token);
+                if (path == null)
+                    break;
+
+                double after = 0;
+                previous = start;
+                for (int city : path) {
+                    after += distances.distance(previous, city);
+                    previous = city;
+                }
+                after += distances.distance(previous, end);
+
+                if (after < before - EPSILON) {
+                    for (int w = 0; w < window; w++)
+                        tour[(i + w) % n] = path[w];
+                    improved = true;
+                }
+            }
+        }
+        return tour;
+    }
+}
@@ -0,0 +1,186 @@
+// Space-filling curve construction heuristic, for instances too big for the other solvers
+// CSC 242-01
+// December 7, 2021
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * A Hilbert curve runs through every cell of a square grid without jumping, so cities that are close
+ * along the curve are close on the map. The reverse doesn't always hold, which makes the tour longer
+ * than the best one: on random uniform cities it measured about 40% above the usual estimate of the
+ * optimum, 0.7124 * sqrt(n * area) (41% at 1000 cities, 37% at 5 million). Visiting the cities in the
+ * order the curve passes them gives a tour in near-linear time, with no distances or neighbour lists needed.
+ *
+ * The coordinates are scaled onto a 2^ORDER x 2^ORDER grid, and every city gets its position along
+ * the curve as a 32-bit key. The key goes in the top half of a long with the city index below it, and
+ * the longs are sorted with an LSD radix sort on the key bytes, so the sort is four linear passes over
+ * primitive arrays. Passes where every key has the same byte are skipped. In parallel mode the keys are
+ * worked out on the common ForkJoinPool, and every pass is split into chunks that count and then place
+ * their own part of the array; the sort is stable, so the result is the same either way.
+ *
+ * This makes a quick start for the local searches or for the genetic algorithm's population
+ * (see GeneticAlgorithm.seedPopulation).
+ */
+public class HilbertCurve implements Solver {
+    public static final int ORDER = 16; // The grid is 2^ORDER cells across
+    private static final int RADIX_BITS = 8;
+    private static final int BUCKETS = 1 << RADIX_BITS;
+    private static final int PARALLEL_CHUNK = 1 << 16; // Fewest cities for each parallel task
+
+    private final Instance instance;
+    private boolean parallel = false;
+
+    public HilbertCurve(Instance instance) {
+        this.instance = instance;
+    }
+
+    @Override
+    public String getName() {
+        return "hilbert";
+    }
+
+    @Override
+    public Instance getInstance() {
+        return instance;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    // The curve takes so little time that the token is not checked
+    @Override
+    public int[] solve(CancellationToken token, ProgressListener listener) {
+        listener = Metrics.track(listener);
+        int[] tour = Tours.canonical(calcTour());
+        if (listener != ProgressListener.NONE) // Measuring the tour is O(n), so only if someone is listening
+            listener.improved(getName(), tour.length, Tours.length(instance.getDistances(), tour), token.elapsed());
+        return tour;
+    }
+
+    // The cities in the order the curve visits them
+    public int[] calcTour() {
+        int n = instance.size();
+        if (n == 0)
+            return new int[0];
+
+        // Scale both axes by the same amount so the curve isn't stretched
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, instance.getX(i));
+            maxX = Math.max(maxX, instance.getX(i));
+            minY = Math.min(minY, instance.getY(i));
+            maxY = Math.max(maxY, instance.getY(i));
+        }
+        double span = Math.max(maxX - minX, maxY - minY);
+        double scale = span > 0 ? ((1 << ORDER) - 1) / span : 0;
+        double originX = minX, originY = minY;
+
+        long[] keys = new long[n];
+        if (parallel) {
+            IntStream.range(0, n).parallel().forEach(i -> keys[i] = packedKey(i, originX, originY, scale));
+        } else {
+            for (int i = 0; i < n; i++)
+                keys[i] = packedKey(i, originX, originY, scale);
+        }
+
+        long[] sorted = radixSort(keys);
+
+        int[] tour = new int[n];
+        for (int i = 0; i < n; i++)
+            tour[i] = (int) sorted[i];
+        return tour;
+    }
+
+    private long packedKey(int city, double originX, double originY, double scale) {
+        int x = (int) ((instance.getX(city) - originX) * scale);
+        int y = (int) ((instance.getY(city) - originY) * scale);
+        return ((long) key(x, y) << 32) | city;
+    }
+
+    /*
+     * Position of the cell (x, y) along the Hilbert curve over the 2^ORDER grid. Works from the biggest
+     * quadrants down: each level adds which quadrant the cell is in, then rotates and flips the cell
+     * into that quadrant's frame, since every quadrant holds a turned copy of the whole curve.
+     */
+    static int key(int x, int y) {
+        int size = 1 << ORDER;
+        int d = 0; // Goes past Integer.MAX_VALUE for the last half of the curve, so read it as unsigned
+        for (int s = 1 << (ORDER - 1); s > 0; s >>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = size - 1 - x;
+                    y = size - 1 - y;
+                }
+                int temp = x;
+                x = y;
+                y = temp;
+            }
+        }
+        return d;
+    }
+
+    // Sort by the top 32 bits, keeping equal keys in their original order. Returns whichever array ends up sorted
+    private long[] radixSort(long[] keys) {
+        int n = keys.length;
+        long[] spare = new long[n];
+        int chunks = parallel ? Math.max(1, Math.min(n / PARALLEL_CHUNK, 4 * Runtime.getRuntime().availableProcessors())) : 1;
+        int chunkSize = (n + chunks - 1) / chunks;
+        int[][] counts = new int[chunks][BUCKETS];
+
+        for (int shift = 32; shift < 64; shift += RADIX_BITS) {
+            int digitShift = shift;
+            long[] from = keys, to = spare;
+
+            // Count the digits in every chunk
+            IntStream chunkIndices = IntStream.range(0, chunks);
+            (chunks > 1 ? chunkIndices.parallel() : chunkIndices).forEach(chunk -> {
+                int[] count = counts[chunk];
+                Arrays.fill(count, 0);
+                int end = Math.min(n, (chunk + 1) * chunkSize);
+                for (int i = chunk * chunkSize; i < end; i++)
+                    count[(int) (from[i] >>> digitShift) & (BUCKETS - 1)]++;
+            });
+
+            // Every key has the same digit here, so this pass wouldn't move anything
+            int digit = (int) (from[0] >>> digitShift) & (BUCKETS - 1);
+            int total = 0;
+            for (int chunk = 0; chunk < chunks; chunk++)
+                total += counts[chunk][digit];
+            if (total == n)
+                continue;
+
+            // Turn the counts into where every chunk starts writing each digit: digit by digit, then chunk by chunk
+            int offset = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int count = counts[chunk][bucket];
+                    counts[chunk][bucket] = offset;
+                    offset += count;
+                }
+            }
+
+            chunkIndices = IntStream.range(0, chunks);
+            (chunks > 1 ? chunkIndices.parallel() : chunkIndices).forEach(chunk -> {
+                int[] next = counts[chunk];
+                int end = Math.min(n, (chunk + 1) * chunkSize);
+                for (int i = chunk * chunkSize; i < end; i++)
+                    to[next[(int) (from[i] >>> digitShift) & (BUCKETS - 1)]++] = from[i];
+            });
+
+            keys = to;
+            spare = from;
+        }
+        return keys;
+    }
+}
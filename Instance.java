@@ -0,0 +1,135 @@
+// Immutable struct-of-arrays store for the cities of a Traveling Salesman Problem instance
+// CSC 242-01
+// December 7, 2021
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/*
+ * Every solver used to take an ArrayList<Node> and call nodes.get(i).getX() in its inner loops,
+ * which means following a pointer to a separate Node object for every coordinate it reads.
+ * An Instance copies the coordinates once into two contiguous arrays, so city i is just x[i], y[i].
+ * Instances never change after they are built, so one Instance can be shared by every solver (and thread).
+ */
+public class Instance {
+
+    /*
+     * How the distance between two cities is measured. The last two are the pseudo-Euclidean and
+     * geographical distances of TSPLIB files, where x and y hold latitude and longitude for GEO.
+     */
+    public enum Metric {
+        EUCLIDEAN, ATT, GEO
+    }
+
+    private static final int RANDOM_CHUNK_SIZE = 65536; // Nodes made from each random number stream
+
+    private final double[] x; // X coordinate of every city
+    private final double[] y; // Y coordinate of every city
+    private final Metric metric;
+    private volatile DistanceOracle distances; // Built the first time a solver asks for it
+
+    public Instance(double[] x, double[] y) {
+        this(x, y, Metric.EUCLIDEAN);
+    }
+
+    public Instance(double[] x, double[] y, Metric metric) {
+        this(metric, x.clone(), y.clone());
+    }
+
+    // Takes the arrays as they are, for callers that built them just for this instance
+    private Instance(Metric metric, double[] x, double[] y) {
+        if (x.length != y.length)
+            throw new IllegalArgumentException("Coordinate arrays must have the same length");
+
+        this.x = x;
+        this.y = y;
+        this.metric = metric;
+    }
+
+    // Instance that keeps the given arrays instead of copying them. The caller must not change them afterwards
+    static Instance adopt(double[] x, double[] y, Metric metric) {
+        return new Instance(metric, x, y);
+    }
+
+    // Build an instance from the Node list the visualization works with
+    public static Instance fromNodes(ArrayList<Node> nodes) {
+        double[] x = new double[nodes.size()];
+        double[] y = new double[nodes.size()];
+
+        for (int i = 0; i < nodes.size(); i++) {
+            x[i] = nodes.get(i).getX();
+            y[i] = nodes.get(i).getY();
+        }
+
+        return new Instance(x, y);
+    }
+
+    /*
+     * Random instance with the same layout Main.generateNodes uses: integer coordinates inside a
+     * width x height window, kept at least 50 pixels away from the top and left borders. The same seed
+     * always gives the same nodes.
+     */
+    public static Instance random(int numberOfNodes, int width, int height, long seed) {
+        double[] x = new double[numberOfNodes];
+        double[] y = new double[numberOfNodes];
+
+        // Every chunk of nodes has its own stream, so the chunks can be made in parallel and still come out the same
+        int chunks = (numberOfNodes + RANDOM_CHUNK_SIZE - 1) / RANDOM_CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            SplittableRandom rand = RandomStreams.stream(seed, chunk);
+            int end = Math.min(numberOfNodes, (chunk + 1) * RANDOM_CHUNK_SIZE);
+
+            for (int i = chunk * RANDOM_CHUNK_SIZE; i < end; i++) {
+                int randomNumberX = rand.nextInt(width - 80);
+                int randomNumberY = rand.nextInt(height - 80);
+
+                if (randomNumberX < 50) // If number is too close to window width border adds some points
+                    randomNumberX += 50;
+                if (randomNumberY < 50) // If number is too close to window height border adds some points
+                    randomNumberY += 50;
+
+                x[i] = randomNumberX;
+                y[i] = randomNumberY;
+            }
+        });
+
+        return adopt(x, y, Metric.EUCLIDEAN);
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    public double getX(int city) {
+        return x[city];
+    }
+
+    public double getY(int city) {
+        return y[city];
+    }
+
+    // Distance oracle shared by every solver working on this instance
+    public DistanceOracle getDistances() {
+        DistanceOracle result = distances;
+        if (result == null) {
+            synchronized (this) {
+                result = distances;
+                if (result == null) {
+                    result = DistanceOracle.forInstance(this);
+                    distances = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Instance [size=" + x.length + "]";
+    }
+}
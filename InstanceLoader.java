@@ -0,0 +1,333 @@
+// Loads Traveling Salesman Problem instances from TSPLIB and CSV files
+// CSC 242-01
+// December 7, 2021
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Two formats are understood:
+ *  - TSPLIB files with EDGE_WEIGHT_TYPE EUC_2D, CEIL_2D, ATT or GEO and a NODE_COORD_SECTION.
+ *    EUC_2D and CEIL_2D are loaded as plain Euclidean distances, without TSPLIB's rounding.
+ *  - Plain coordinate files with "x y" or "id x y" on every line, separated by commas, spaces or tabs,
+ *    with an optional header line.
+ *
+ * Files with millions of cities are common, so the file is memory-mapped and the numbers are parsed
+ * straight from the mapped bytes into the coordinate arrays, without making a String per line or a
+ * Node per city. Files larger than one mapping can hold are mapped a window at a time.
+ */
+public class InstanceLoader {
+    private static final long WINDOW_SIZE = 1L << 30; // Bytes mapped at a time
+    private static final double[] POWERS_OF_TEN = new double[23]; // 10^22 is the largest power of ten a double holds exactly
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int peeked = -2; // Byte returned by peek() and not yet consumed, -2 if none
+
+    private InstanceLoader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        mapWindow(0);
+    }
+
+    // Load the instance in a file, working out from its first line whether it is TSPLIB or CSV
+    public static Instance load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            InstanceLoader loader = new InstanceLoader(channel);
+            loader.skipWhitespace();
+
+            int first = loader.peek();
+            if (first < 0)
+                throw new IOException("The file is empty");
+
+            if (startsNumber(first))
+                return loader.readCoordinates(Instance.Metric.EUCLIDEAN, -1, loader.estimatedLines());
+
+            String firstLine = loader.readLine();
+            if (firstLine.indexOf(':') >= 0 || firstLine.trim().equals("NODE_COORD_SECTION"))
+                return loader.readTsplib(firstLine);
+
+            return loader.readCoordinates(Instance.Metric.EUCLIDEAN, -1, loader.estimatedLines()); // After a CSV header line
+        }
+    }
+
+    // Rough number of lines in a coordinate file, assuming about 16 bytes per line
+    private int estimatedLines() {
+        return (int) Math.min(Integer.MAX_VALUE - 8, fileSize / 16);
+    }
+
+    // Read the "KEYWORD : value" header of a TSPLIB file, then its coordinates
+    private Instance readTsplib(String line) throws IOException {
+        int dimension = -1;
+        Instance.Metric metric = Instance.Metric.EUCLIDEAN;
+
+        while (line != null) {
+            String keyword = line, value = "";
+            int colon = line.indexOf(':');
+            if (colon >= 0) {
+                keyword = line.substring(0, colon);
+                value = line.substring(colon + 1).trim();
+            }
+            keyword = keyword.trim();
+
+            if (keyword.equals("NODE_COORD_SECTION"))
+                return readCoordinates(metric, dimension, dimension > 0 ? dimension : 1024);
+
+            switch (keyword) {
+                case "TYPE":
+                    if (!value.startsWith("TSP"))
+                        throw new IOException("Unsupported TSPLIB problem type " + value);
+                    break;
+                case "DIMENSION":
+                    try {
+                        dimension = Integer.parseInt(value);
+                    } catch (NumberFormatException ex) {
+                        throw new IOException("Invalid DIMENSION " + value);
+                    }
+                    break;
+                case "EDGE_WEIGHT_TYPE":
+                    if (value.equals("EUC_2D") || value.equals("CEIL_2D"))
+                        metric = Instance.Metric.EUCLIDEAN;
+                    else if (value.equals("ATT"))
+                        metric = Instance.Metric.ATT;
+                    else if (value.equals("GEO"))
+                        metric = Instance.Metric.GEO;
+                    else
+                        throw new IOException("Unsupported EDGE_WEIGHT_TYPE " + value);
+                    break;
+                case "EOF":
+                    throw new IOException("No NODE_COORD_SECTION found");
+                default: // NAME, COMMENT and other keywords don't matter here
+                    break;
+            }
+
+            line = readLine();
+        }
+        throw new IOException("No NODE_COORD_SECTION found");
+    }
+
+    /*
+     * Read coordinate lines until the end of the file or a line that doesn't start with a number (like TSPLIB's EOF).
+     * Lines with three numbers are "id x y". In a TSPLIB file the id says where the city goes, in any other
+     * file cities are kept in the order they appear. A TSPLIB file must give every id from 1 to DIMENSION
+     * exactly once, or a city would be left at (0, 0) without anyone noticing.
+     */
+    private Instance readCoordinates(Instance.Metric metric, int dimension, int expected) throws IOException {
+        double[] x = new double[Math.max(16, expected)];
+        double[] y = new double[x.length];
+        double[] numbers = new double[3];
+        boolean[] placed = dimension > 0 ? new boolean[dimension] : null; // Ids already read, for TSPLIB files
+        int count = 0;
+
+        while (true) {
+            skipWhitespace();
+            if (!startsNumber(peek()))
+                break;
+
+            int found = 0;
+            while (found < 3 && startsNumber(peek()))
+                numbers[found++] = readNumber();
+            skipLine();
+
+            if (found < 2)
+                throw new IOException("Expected coordinates on line " + (count + 1));
+
+            int index = count;
+            if (placed != null) {
+                if (found == 3) {
+                    if (numbers[0] != Math.rint(numbers[0]))
+                        throw new IOException("Node id " + numbers[0] + " on line " + (count + 1) + " is not a whole number");
+                    if (numbers[0] < 1 || numbers[0] > dimension)
+                        throw new IOException("Node id " + (long) numbers[0] + " on line " + (count + 1) + " is not between 1 and DIMENSION " + dimension);
+                    index = (int) numbers[0] - 1;
+                }
+                if (index >= dimension)
+                    throw new IOException("More than DIMENSION " + dimension + " cities were found");
+                if (placed[index])
+                    throw new IOException("Node id " + (index + 1) + " appears more than once");
+                placed[index] = true;
+            }
+
+            if (index >= x.length) {
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(index + 1L, x.length * 2L));
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+            }
+            x[index] = numbers[found - 2];
+            y[index] = numbers[found - 1];
+            count++;
+        }
+
+        if (placed != null && count != dimension) {
+            int missing = 0;
+            while (placed[missing])
+                missing++;
+            throw new IOException("DIMENSION is " + dimension + " but " + count + " cities were found (node id " + (missing + 1) + " is missing)");
+        }
+
+        if (x.length != count) {
+            x = Arrays.copyOf(x, count);
+            y = Arrays.copyOf(y, count);
+        }
+        return Instance.adopt(x, y, metric);
+    }
+
+    // Parse a decimal number with optional sign, fraction and exponent, then skip the separator after it
+    private double readNumber() throws IOException {
+        boolean negative = false;
+        int c = next();
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            c = next();
+        }
+
+        long mantissa = 0;
+        int exponent = 0, digits = 0;
+        boolean anyDigits = false;
+
+        while (isDigit(c)) {
+            anyDigits = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0)
+                    digits++;
+            } else {
+                exponent++; // Digits beyond what a long holds only scale the number
+            }
+            c = next();
+        }
+        if (c == '.') {
+            c = next();
+            while (isDigit(c)) {
+                anyDigits = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    exponent--;
+                }
+                c = next();
+            }
+        }
+        if (!anyDigits)
+            throw new IOException("Invalid number near byte " + position());
+
+        if (c == 'e' || c == 'E') {
+            c = next();
+            boolean negativeExponent = c == '-';
+            if (c == '-' || c == '+')
+                c = next();
+            int value = 0;
+            while (isDigit(c)) {
+                value = Math.min(10000, value * 10 + (c - '0'));
+                c = next();
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        // c is the byte after the number: put back a line end so the caller sees where the line stops
+        if (c == '\n' || c == '\r')
+            peeked = c;
+        else if (c >= 0 && c != ',' && c != ' ' && c != '\t' && c != ';')
+            throw new IOException("Invalid number near byte " + position());
+        skipSpaces();
+
+        double value = mantissa;
+        if (exponent < 0)
+            value = -exponent < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-exponent] : value * Math.pow(10, exponent);
+        else if (exponent > 0)
+            value = exponent < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+        return negative ? -value : value;
+    }
+
+    // Read up to the end of the line. Only used for the few header lines
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c = next();
+        if (c < 0)
+            return null;
+        while (c >= 0 && c != '\n') {
+            if (c != '\r')
+                line.append((char) c);
+            c = next();
+        }
+        return line.toString();
+    }
+
+    private void skipLine() throws IOException {
+        int c = next();
+        while (c >= 0 && c != '\n')
+            c = next();
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+            next();
+            c = peek();
+        }
+    }
+
+    private void skipSpaces() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == ',' || c == ';') {
+            next();
+            c = peek();
+        }
+    }
+
+    private static boolean startsNumber(int c) {
+        return c == '-' || c == '+' || c == '.' || isDigit(c);
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2)
+            peeked = read();
+        return peeked;
+    }
+
+    private int next() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return read();
+    }
+
+    // Next byte of the file, or -1 at the end, moving the mapped window along when it runs out
+    private int read() throws IOException {
+        if (!window.hasRemaining()) {
+            long nextStart = windowStart + window.limit();
+            if (nextStart >= fileSize)
+                return -1;
+            mapWindow(nextStart);
+        }
+        return window.get() & 0xFF;
+    }
+
+    private void mapWindow(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+    }
+
+    private long position() {
+        return windowStart + window.position();
+    }
+}
@@ -0,0 +1,217 @@
+// Island model for running several genetic algorithm populations side by side
+// CSC 242-01
+// December 7, 2021
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Every island is a separate GeneticAlgorithm with its own population, running its generation loop
+ * on its own thread. Every migrationInterval generations each island sends a copy of its best path to
+ * its neighbours, which put it into their populations at their next migration. With a RING topology
+ * island i sends to island i + 1, with FULLY_CONNECTED it sends to every other island.
+ *
+ * Islands never wait for each other: migrants go through lock-free queues, and the best path over all
+ * islands is kept in an AtomicReference that islands replace with compare-and-set when they beat it.
+ * Lengths are the genetic algorithm's own (paths that don't return to the start).
+ */
+public class IslandModel {
+
+    public enum Topology {
+        RING, FULLY_CONNECTED
+    }
+
+    // Best path found by any island, replaced as a whole so readers never see a half-written one
+    public static class Best {
+        private final int[] path;
+        private final double length;
+        private final int island;
+
+        Best(int[] path, double length, int island) {
+            this.path = path;
+            this.length = length;
+            this.island = island;
+        }
+
+        public int[] getPath() {
+            return path.clone();
+        }
+
+        public double getLength() {
+            return length;
+        }
+
+        public int getIsland() {
+            return island;
+        }
+    }
+
+    private final GeneticAlgorithm[] islands;
+    private final List<ConcurrentLinkedQueue<int[]>> inboxes = new ArrayList<>();
+    private final int migrationInterval;
+    private final Topology topology;
+    private final AtomicReference<Best> best = new AtomicReference<>();
+    private volatile boolean stopped;
+
+    public IslandModel(Instance instance, int islandCount, int populationSize, int migrationInterval, Topology topology) {
+        this(instance, islandCount, populationSize, migrationInterval, topology, RandomStreams.newSeed());
+    }
+
+    /*
+     * Every island gets its own stream from the seed. An island on its own repeats exactly, but when
+     * migrants arrive depends on how the threads are scheduled, so a whole run with migration may not.
+     */
+    public IslandModel(Instance instance, int islandCount, int populationSize, int migrationInterval, Topology topology, long seed) {
+        if (islandCount < 1 || migrationInterval < 1)
+            throw new IllegalArgumentException("Need at least one island and a migration interval of at least one generation");
+
+        this.migrationInterval = migrationInterval;
+        this.topology = topology;
+
+        islands = new GeneticAlgorithm[islandCount];
+        for (int i = 0; i < islandCount; i++) {
+            islands[i] = new GeneticAlgorithm(populationSize, instance, RandomStreams.derive(seed, i));
+            inboxes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /*
+     * Run every island until it has done maxGenerations generations, the time limit (in nanoseconds) is
+     * up, or stop() is called. Blocks until all islands have stopped and returns the best path found.
+     */
+    public int[] run(int maxGenerations, long timeLimit) throws InterruptedException {
+        long deadline = timeLimit == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeLimit;
+        stopped = false;
+
+        ExecutorService executor = Executors.newFixedThreadPool(islands.length);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < islands.length; i++) {
+                int island = i;
+                running.add(executor.submit(() -> runIsland(island, maxGenerations, deadline)));
+            }
+
+            for (Future<?> future : running) {
+                try {
+                    future.get();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    throw new IllegalStateException("Island failed", ex.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (best.get() == null) { // Stopped before any island finished a generation, so use the best starting path
+            for (int i = 0; i < islands.length; i++) {
+                islands[i].scorePopulation();
+                offerBest(i, islands[i]);
+            }
+        }
+        return best.get().getPath();
+    }
+
+    // Pick the parents on every island this way
+    public void setSelection(ParentSelection.Method method) {
+        for (GeneticAlgorithm island : islands)
+            island.setSelection(method);
+    }
+
+    public void setMutation(GeneticAlgorithm.Mutation mutation) {
+        for (GeneticAlgorithm island : islands)
+            island.setMutation(mutation);
+    }
+
+    // Start every island from the same tour (see GeneticAlgorithm.seedPopulation). Call it before run()
+    public void seedPopulation(int[] tour) {
+        for (GeneticAlgorithm island : islands)
+            island.seedPopulation(tour);
+    }
+
+    // Record every generation of every island in the trace, as "ga0", "ga1", ...
+    public void setTrace(ConvergenceTrace trace) {
+        for (int i = 0; i < islands.length; i++)
+            islands[i].setTrace(trace, "ga" + i);
+    }
+
+    // Ask all islands to stop after their current generation. Safe to call from any thread
+    public void stop() {
+        stopped = true;
+    }
+
+    // Best path found by any island so far, or null before the first generation. Never blocks
+    public Best getBest() {
+        return best.get();
+    }
+
+    // Total number of generations run by all islands
+    public long getGenerationCount() {
+        long generations = 0;
+        for (GeneticAlgorithm island : islands)
+            generations += island.getPopulationCount();
+        return generations;
+    }
+
+    // Most generations run by any one island, which is what compares with a single population's count
+    public long getMaxGenerationCount() {
+        long generations = 0;
+        for (GeneticAlgorithm island : islands)
+            generations = Math.max(generations, island.getPopulationCount());
+        return generations;
+    }
+
+    public int getIslandCount() {
+        return islands.length;
+    }
+
+    private void runIsland(int island, int maxGenerations, long deadline) {
+        GeneticAlgorithm geneticAlgo = islands[island];
+
+        while (!stopped && geneticAlgo.getPopulationCount() < maxGenerations && System.nanoTime() < deadline) {
+            geneticAlgo.runGeneticAlgorithm();
+            offerBest(island, geneticAlgo);
+
+            if (geneticAlgo.getPopulationCount() % migrationInterval == 0)
+                migrate(island, geneticAlgo);
+        }
+    }
+
+    // Replace the global best with this island's best if it is shorter
+    private void offerBest(int island, GeneticAlgorithm geneticAlgo) {
+        double length = geneticAlgo.getBestRecordedDistance();
+        Best current = best.get();
+        if (current != null && current.getLength() <= length)
+            return;
+
+        Best candidate = new Best(geneticAlgo.getBestPath(), length, island);
+        while (current == null || length < current.getLength()) {
+            if (best.compareAndSet(current, candidate))
+                return;
+            current = best.get();
+        }
+    }
+
+    // Send this island's best path to its neighbours and take in what they sent
+    private void migrate(int island, GeneticAlgorithm geneticAlgo) {
+        if (islands.length > 1) {
+            int[] elite = geneticAlgo.getBestPath();
+
+            if (topology == Topology.RING) {
+                inboxes.get((island + 1) % islands.length).offer(elite);
+            } else {
+                for (int other = 0; other < islands.length; other++)
+                    if (other != island)
+                        inboxes.get(other).offer(elite);
+            }
+        }
+
+        int[] migrant;
+        while ((migrant = inboxes.get(island).poll()) != null)
+            geneticAlgo.immigrate(migrant);
+    }
+}
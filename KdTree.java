@@ -0,0 +1,242 @@
+// k-d tree over the cities of an Instance, for nearest neighbour queries
+// CSC 242-01
+// December 7, 2021
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * The tree is stored implicitly: the cities are reordered in one int[] so that every subtree is a
+ * contiguous range of it, and tree node i has its children at 2i + 1 and 2i + 2.
+ * Each node splits its range at the median along the axis where its cities are most spread out,
+ * so the tree is balanced and a node's range can be worked out on the way down instead of stored.
+ * Ranges of BUCKET_SIZE cities or fewer are leaves and are searched with a plain loop.
+ *
+ * Cities can be removed from the tree (for example once a tour has visited them). Every node keeps
+ * a count of the cities still in its subtree, so searches skip empty subtrees without looking inside.
+ * Removing and the single nearest() and nearestWithin() queries share scratch space, so they must not
+ * be called from several threads at once; kNearest() on a tree nobody is removing from is safe to share.
+ */
+public class KdTree {
+    private static final int BUCKET_SIZE = 8;
+
+    private final Instance instance;
+    private final int[] cities; // Cities in the tree, reordered so that every subtree is a contiguous range
+    private final double[] split; // Coordinate each node splits its range at
+    private final boolean[] splitOnX; // Whether each node splits on the X axis (true) or the Y axis (false)
+    private final int[] live; // Number of cities not yet removed in the subtree of each node
+    private final boolean[] removed; // Whether the city at each position of cities[] has been removed
+    private int[] position; // Position of each city in cities[], built the first time a city is removed
+
+    // Scratch space for nearest()
+    private final int[] nearestId = new int[1];
+    private final double[] nearestDistance = new double[1];
+
+    // Tree over every city of the instance
+    public KdTree(Instance instance) {
+        this(instance, IntStream.range(0, instance.size()).toArray());
+    }
+
+    // Tree over only the given cities of the instance
+    public KdTree(Instance instance, int[] cities) {
+        this.instance = instance;
+        this.cities = cities.clone();
+
+        int leaves = 1;
+        while ((long) leaves * BUCKET_SIZE < cities.length)
+            leaves <<= 1;
+
+        split = new double[2 * leaves];
+        splitOnX = new boolean[2 * leaves];
+        live = new int[2 * leaves];
+        removed = new boolean[cities.length];
+
+        build(0, 0, this.cities.length);
+    }
+
+    public int size() {
+        return cities.length;
+    }
+
+    // Number of cities that have not been removed
+    public int liveCount() {
+        return live[0];
+    }
+
+    // Remove a city from the tree, so no later query returns it
+    public void remove(int city) {
+        if (position == null) {
+            position = new int[instance.size()];
+            Arrays.fill(position, -1);
+            for (int i = 0; i < cities.length; i++)
+                position[cities[i]] = i;
+        }
+
+        int target = position[city];
+        if (target < 0 || removed[target])
+            return;
+        removed[target] = true;
+
+        // Walk down to the leaf holding the city, taking it off the count of every node on the way
+        int node = 0, lo = 0, hi = cities.length;
+        while (true) {
+            live[node]--;
+            if (hi - lo <= BUCKET_SIZE)
+                break;
+
+            int mid = (lo + hi) >>> 1;
+            if (target < mid) {
+                node = 2 * node + 1;
+                hi = mid;
+            } else {
+                node = 2 * node + 2;
+                lo = mid;
+            }
+        }
+    }
+
+    /*
+     * The city still in the tree that is closest to the point (x, y), or -1 if the tree is empty.
+     * Removing each city as it is returned gives "nearest unvisited city" queries in about O(log n).
+     */
+    public int nearest(double x, double y) {
+        int found = search(0, 0, cities.length, x, y, -1, 1, nearestId, nearestDistance, 0);
+        return found == 0 ? -1 : nearestId[0];
+    }
+
+    /*
+     * The city still in the tree that is closest to the point (x, y), if it is no more than radius away,
+     * otherwise -1. Subtrees farther than radius away are never looked at, so a miss costs less than nearest().
+     */
+    public int nearestWithin(double x, double y, double radius) {
+        // Start the search with a pretend city at exactly radius, which only a closer city can replace
+        nearestId[0] = -1;
+        nearestDistance[0] = Math.nextUp(radius * radius);
+        search(0, 0, cities.length, x, y, -1, 1, nearestId, nearestDistance, 1);
+        return nearestId[0];
+    }
+
+    /*
+     * Find the k cities in the tree closest to the given city, not counting the city itself.
+     * The result is written into ids (closest first) and the squared distances into squaredDistances,
+     * both of which must have room for k entries. Returns how many cities were found, which is
+     * less than k only if the tree holds fewer than k other cities.
+     */
+    public int kNearest(int city, int k, int[] ids, double[] squaredDistances) {
+        return kNearest(instance.getX(city), instance.getY(city), city, k, ids, squaredDistances);
+    }
+
+    // Same as above for an arbitrary point, skipping the city exclude (-1 to skip none)
+    public int kNearest(double x, double y, int exclude, int k, int[] ids, double[] squaredDistances) {
+        if (k <= 0)
+            return 0;
+        return search(0, 0, cities.length, x, y, exclude, k, ids, squaredDistances, 0);
+    }
+
+    // Recursively split the range [lo, hi) of cities at its median
+    private void build(int node, int lo, int hi) {
+        live[node] = hi - lo;
+        if (hi - lo <= BUCKET_SIZE)
+            return;
+
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            double x = instance.getX(cities[i]), y = instance.getY(cities[i]);
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        boolean onX = maxX - minX >= maxY - minY;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, onX);
+
+        splitOnX[node] = onX;
+        split[node] = coordinate(cities[mid], onX);
+
+        build(2 * node + 1, lo, mid);
+        build(2 * node + 2, mid, hi);
+    }
+
+    // Quickselect: reorder cities[lo..hi] so that the city at position k is the one that would be there if sorted
+    private void select(int lo, int hi, int k, boolean onX) {
+        while (hi > lo) {
+            double pivot = coordinate(cities[(lo + hi) >>> 1], onX);
+            int i = lo, j = hi;
+
+            while (i <= j) {
+                while (coordinate(cities[i], onX) < pivot)
+                    i++;
+                while (coordinate(cities[j], onX) > pivot)
+                    j--;
+                if (i <= j) {
+                    int temp = cities[i];
+                    cities[i] = cities[j];
+                    cities[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private int search(int node, int lo, int hi, double x, double y, int exclude, int k, int[] ids, double[] squaredDistances, int count) {
+        if (live[node] == 0)
+            return count;
+
+        if (hi - lo <= BUCKET_SIZE) {
+            for (int i = lo; i < hi; i++) {
+                int city = cities[i];
+                if (city == exclude || removed[i])
+                    continue;
+
+                double dx = instance.getX(city) - x, dy = instance.getY(city) - y;
+                double distance = dx * dx + dy * dy;
+                if (count < k || distance < squaredDistances[count - 1])
+                    count = insert(city, distance, k, ids, squaredDistances, count);
+            }
+            return count;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        double diff = (splitOnX[node] ? x : y) - split[node];
+
+        // Search the side the point is on first, then the other side only if it could still hold something closer
+        if (diff < 0) {
+            count = search(2 * node + 1, lo, mid, x, y, exclude, k, ids, squaredDistances, count);
+            if (count < k || diff * diff < squaredDistances[count - 1])
+                count = search(2 * node + 2, mid, hi, x, y, exclude, k, ids, squaredDistances, count);
+        } else {
+            count = search(2 * node + 2, mid, hi, x, y, exclude, k, ids, squaredDistances, count);
+            if (count < k || diff * diff < squaredDistances[count - 1])
+                count = search(2 * node + 1, lo, mid, x, y, exclude, k, ids, squaredDistances, count);
+        }
+        return count;
+    }
+
+    // Insert a city into the sorted result arrays, dropping the farthest one if they are full
+    private static int insert(int city, double distance, int k, int[] ids, double[] squaredDistances, int count) {
+        int i = count < k ? count++ : k - 1;
+        while (i > 0 && squaredDistances[i - 1] > distance) {
+            ids[i] = ids[i - 1];
+            squaredDistances[i] = squaredDistances[i - 1];
+            i--;
+        }
+        ids[i] = city;
+        squaredDistances[i] = distance;
+        return count;
+    }
+
+    private double coordinate(int city, boolean onX) {
+        return onX ? instance.getX(city) : instance.getY(city);
+    }
+}
@@ -0,0 +1,292 @@
+// Lin-Kernighan style local search with random kicks, for getting close to the best known tours
+// CSC 242-01
+// December 7, 2021
+
+import java.util.SplittableRandom;
+
+/*
+ * The local search combines two kinds of moves, taken from a work queue with don't look bits:
+ *  - Variable depth moves in the style of Lin and Kernighan. Starting from an edge (t1, t2), the edge
+ *    (t2, t3) to one of t2's nearest neighbours is added and the edge (t3, t4) removed, which is a 2-opt move
+ *    that leaves (t1, t4) as the closing edge. The chain then continues from t4, up to MAX_DEPTH steps,
+ *    as long as the edges removed outweigh the edges added. At the end the tour is rolled back to the
+ *    step where closing it gave the biggest improvement (or all the way, if none did).
+ *  - Or-opt segment moves (see OrOpt).
+ *
+ * When the local search gets stuck, the tour is kicked: two short neighbouring segments of the tour
+ * are swapped (a segment version of the double bridge move, which local search alone can't undo)
+ * and the local search runs again around the cities that changed. If the result is not shorter than
+ * the best tour so far, the kick and everything after it is rolled back.
+ *
+ * This goes on until the time limit or the kick limit runs out, or stop() is called or the token is
+ * cancelled. The best tour
+ * found so far can be read from any thread with getBestTour() while it runs.
+ */
+public class LinKernighan {
+    public static final int DEFAULT_NEIGHBOURS = 8;
+    private static final int MAX_DEPTH = 10; // Most 2-opt steps in one variable depth move
+    private static final int MAX_KICK_SEGMENT = 50; // Longest segment swapped by a kick
+    private static final long PUBLISH_INTERVAL = 100_000_000L; // Nanoseconds between copies of the best tour
+    private static final double EPSILON = 1e-7;
+
+    private final Instance instance;
+    private final DistanceOracle distances;
+    private final CandidateLists candidates;
+    private final OrOpt orOpt;
+    private SplittableRandom rand = new SplittableRandom(RandomStreams.newSeed());
+
+    private long timeLimit = Long.MAX_VALUE; // Nanoseconds
+    private long maxKicks = Long.MAX_VALUE;
+    private volatile boolean stopped;
+    private CancellationToken token; // Of the running improve()
+
+    // Best tour so far, copied out at most every PUBLISH_INTERVAL so other threads can read it
+    private volatile int[] bestTour;
+    private volatile double bestLength = Double.POSITIVE_INFINITY;
+    private volatile long kicks;
+
+    // Edges added by the current variable depth move, which it must not remove again
+    private final int[] addedFrom = new int[MAX_DEPTH];
+    private final int[] addedTo = new int[MAX_DEPTH];
+    private final int[] touched = new int[2 * MAX_DEPTH + 2];
+
+    public LinKernighan(Instance instance) {
+        this(instance, new CandidateLists(instance, DEFAULT_NEIGHBOURS));
+    }
+
+    public LinKernighan(Instance instance, CandidateLists candidates) {
+        this.instance = instance;
+        this.distances = instance.getDistances();
+        this.candidates = candidates;
+        this.orOpt = new OrOpt(instance, candidates);
+    }
+
+    // Stop kicking after this many milliseconds
+    public void setTimeLimit(long milliseconds) {
+        timeLimit = milliseconds * 1_000_000L;
+    }
+
+    // Kick the same way every time for the same seed
+    public void setSeed(long seed) {
+        rand = new SplittableRandom(seed);
+    }
+
+    // Stop after this many kicks (0 gives a plain local search)
+    public void setMaxKicks(long maxKicks) {
+        this.maxKicks = maxKicks;
+    }
+
+    // Ask a running improve() to return as soon as possible. Safe to call from any thread
+    public void stop() {
+        stopped = true;
+    }
+
+    // Best tour found so far, or null before improve() starts. Safe to call from any thread
+    public int[] getBestTour() {
+        int[] tour = bestTour;
+        return tour == null ? null : tour.clone();
+    }
+
+    public double getBestLength() {
+        return bestLength;
+    }
+
+    public long getKicks() {
+        return kicks;
+    }
+
+    public Instance getInstance() {
+        return instance;
+    }
+
+    // Improve the tour until a limit is reached or stop() is called, and return the best tour found
+    public int[] improve(int[] order) {
+        return improve(order, new CancellationToken());
+    }
+
+    // Same, but also stop when the token is cancelled
+    public int[] improve(int[] order, CancellationToken token) {
+        return improve(order, token, ProgressListener.NONE);
+    }
+
+    // Same, reporting every new best tour to the listener (with the number of kicks so far as the step)
+    public int[] improve(int[] order, CancellationToken token, ProgressListener listener) {
+        this.token = token;
+        long deadline = timeLimit == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeLimit;
+        stopped = false;
+        kicks = 0;
+
+        ArrayTour tour = new ArrayTour(order);
+        tour.setJournaling(true); // Moves that don't pay off and kicks that don't help are rolled back
+        int n = tour.size();
+        double length = tour.length(distances);
+        publish(tour, length);
+        if (n < 8)
+            return tour.toArray();
+
+        WorkQueue queue = new WorkQueue(n);
+        for (int i = 0; i < n; i++)
+            queue.push(tour.cityAt(i));
+        length += localSearch(tour, queue, deadline);
+        tour.clearJournal();
+
+        double best = length;
+        long lastPublished = System.nanoTime();
+        publish(tour, best);
+        listener.improved("lk", 0, best, token.elapsed());
+
+        int maxSegment = Math.min(MAX_KICK_SEGMENT, (n - 2) / 3);
+        while (!stopped && !token.isCancelled() && kicks < maxKicks && System.nanoTime() < deadline) {
+            kicks++;
+            length += kick(tour, queue, maxSegment);
+            length += localSearch(tour, queue, deadline);
+
+            if (length < best - EPSILON) {
+                best = length;
+                tour.clearJournal();
+                listener.improved("lk", kicks, best, token.elapsed());
+                if (System.nanoTime() - lastPublished > PUBLISH_INTERVAL) {
+                    publish(tour, best);
+                    lastPublished = System.nanoTime();
+                }
+            } else {
+                tour.rollBack(0);
+                tour.clearJournal();
+                length = best;
+            }
+        }
+
+        publish(tour, best);
+        return tour.toArray();
+    }
+
+    private void publish(ArrayTour tour, double length) {
+        bestTour = tour.toArray();
+        bestLength = length;
+    }
+
+    // Run the local search on the queued cities until the queue is empty. Returns the change in length
+    private double localSearch(ArrayTour tour, WorkQueue queue, long deadline) {
+        double change = 0;
+        int steps = 0;
+
+        while (!queue.isEmpty()) {
+            if ((++steps & 255) == 0 && (stopped || token.isCancelled() || System.nanoTime() >= deadline)) {
+                while (!queue.isEmpty())
+                    queue.pop();
+                break;
+            }
+
+            int a = queue.pop();
+            double delta = variableDepthMove(tour, a, queue);
+            if (delta == 0)
+                delta = orOpt.improveCity(tour, a, queue);
+
+            if (delta < 0) {
+                change += delta;
+                queue.push(a);
+            }
+        }
+        return change;
+    }
+
+    // Try a variable depth move starting from each of the two tour edges at t1. Returns the change in length
+    private double variableDepthMove(ArrayTour tour, int t1, WorkQueue queue) {
+        for (int direction = 0; direction < 2; direction++) {
+            int t2 = direction == 0 ? tour.next(t1) : tour.prev(t1);
+            int start = tour.mark();
+
+            double gain = distances.distance(t1, t2); // Removed minus added, not counting the closing edge
+            double bestGain = EPSILON;
+            int bestMark = start, bestTouched = 0;
+            int depth = 0, touchedCount = 0;
+            touched[touchedCount++] = t2;
+
+            while (depth < MAX_DEPTH) {
+                boolean t1Next = tour.next(t2) == t1; // Direction from t2 to t1, which t4 must follow from t3
+                int bestT3 = -1, bestT4 = -1;
+                double bestStepGain = Double.NEGATIVE_INFINITY;
+
+                for (int i = 0; i < candidates.getK(); i++) {
+                    int t3 = candidates.get(t2, i);
+                    double added = distances.distance(t2, t3);
+                    if (gain - added <= EPSILON)
+                        break; // Sorted neighbours: the rest are even longer
+                    if (t3 == t1 || t3 == tour.next(t2) || t3 == tour.prev(t2))
+                        continue;
+
+                    int t4 = t1Next ? tour.next(t3) : tour.prev(t3);
+                    if (t4 == t2 || t4 == t1 || isAdded(t3, t4, depth))
+                        continue;
+
+                    double stepGain = distances.distance(t3, t4) - added;
+                    if (stepGain > bestStepGain) {
+                        bestStepGain = stepGain;
+                        bestT3 = t3;
+                        bestT4 = t4;
+                    }
+                }
+                if (bestT3 < 0)
+                    break;
+
+                // Remove (t1, t2) and (t3, t4), add (t2, t3) and the closing edge (t1, t4)
+                tour.twoOptMove(t2, t1, bestT3, bestT4);
+                addedFrom[depth] = t2;
+                addedTo[depth] = bestT3;
+                depth++;
+                gain += bestStepGain;
+                touched[touchedCount++] = bestT3;
+                touched[touchedCount++] = bestT4;
+
+                double closedGain = gain - distances.distance(bestT4, t1);
+                if (closedGain > bestGain) {
+                    bestGain = closedGain;
+                    bestMark = tour.mark();
+                    bestTouched = touchedCount;
+                }
+                t2 = bestT4;
+            }
+
+            tour.rollBack(bestMark);
+            if (bestMark != start) {
+                queue.push(t1);
+                for (int i = 0; i < bestTouched; i++)
+                    queue.push(touched[i]);
+                return -bestGain;
+            }
+        }
+        return 0;
+    }
+
+    private boolean isAdded(int a, int b, int depth) {
+        for (int i = 0; i < depth; i++)
+            if ((addedFrom[i] == a && addedTo[i] == b) || (addedFrom[i] == b && addedTo[i] == a))
+                return true;
+        return false;
+    }
+
+    // Swap two short neighbouring segments of the tour. Returns the change in length
+    private double kick(ArrayTour tour, WorkQueue queue, int maxSegment) {
+        int p = tour.cityAt(rand.nextInt(tour.size()));
+        int s1 = tour.next(p), s2 = s1;
+        for (int i = 1 + rand.nextInt(maxSegment); i > 1; i--)
+            s2 = tour.next(s2);
+        int nx = tour.next(s2), last = nx;
+        for (int i = 1 + rand.nextInt(maxSegment); i > 1; i--)
+            last = tour.next(last);
+        int e = tour.next(last);
+
+        // p [s1..s2] [nx..last] e becomes p [nx..last] [s1..s2] e
+        double change = distances.distance(p, nx) + distances.distance(last, s1) + distances.distance(s2, e)
+                - distances.distance(p, s1) - distances.distance(s2, nx) - distances.distance(last, e);
+        OrOpt.apply(tour, p, s1, s2, nx, last, e, true);
+
+        queue.push(p);
+        queue.push(s1);
+        queue.push(s2);
+        queue.push(nx);
+        queue.push(last);
+        queue.push(e);
+        return change;
+    }
+}
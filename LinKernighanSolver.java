@@ -0,0 +1,49 @@
+// Solver that builds a tour with another solver and then improves it with LinKernighan
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * The construction solver runs first (greedy by default, which gives the local search the best start),
+ * and the Lin-Kernighan search then kicks and improves the tour until the token is cancelled or
+ * the kick limit is reached.
+ */
+public class LinKernighanSolver implements Solver {
+    private final Solver construction;
+    private final LinKernighan linKernighan;
+
+    public LinKernighanSolver(Instance instance) {
+        this(new GreedyAlgorithm(instance), new LinKernighan(instance));
+    }
+
+    public LinKernighanSolver(Solver construction, LinKernighan linKernighan) {
+        this.construction = construction;
+        this.linKernighan = linKernighan;
+    }
+
+    public LinKernighan getLinKernighan() {
+        return linKernighan;
+    }
+
+    @Override
+    public String getName() {
+        return construction.getName() + "+lk";
+    }
+
+    @Override
+    public Instance getInstance() {
+        return linKernighan.getInstance();
+    }
+
+    @Override
+    public int[] solve(CancellationToken token, ProgressListener listener) {
+        int[] tour = construction.solve(token, listener);
+        if (token.isCancelled())
+            return tour;
+
+        // The construction recorded its own metrics under its own name; the improvements go under this one
+        String name = getName();
+        ProgressListener tracked = Metrics.track(listener);
+        return Tours.canonical(linKernighan.improve(tour, token,
+                (solver, step, length, elapsed) -> tracked.improved(name, step, length, elapsed)));
+    }
+}
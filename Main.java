@@ -5,15 +5,13 @@
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 import javafx.scene.Group;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -22,8 +20,6 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
-import javafx.scene.shape.Line;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontPosture;
 import javafx.scene.text.FontWeight;
@@ -35,6 +31,9 @@ public class Main extends Application {
 
     public static int windowWidth = 1000; // Pixels for the width of the window
     public static int windowHeight = 800; // Pixels for the height of the window
+    public static long seed = RandomStreams.newSeed(); // Drives every random choice; pass --seed=N to repeat a session
+    private static int layoutsGenerated = 0; // Each new set of nodes gets its own stream of the seed
+    public static int stepsPerFrame = 0; // Edges of the nearest neighbour or greedy path drawn per frame, 0 to base it on the number of nodes
     Stage window;
     Scene algorithmSelection;
     Scene visualization;
@@ -47,7 +46,21 @@ public class Main extends Application {
     public boolean nearestPathFinished = false;
     public boolean greedyPathFinished = false;
     public boolean manualPathStarted = false;
-    public int manualPathDistance = 0;
+    public int drawnPopulationCount = -1; // Generation of the genetic algorithm snapshot on screen
+    public int revealedEdges = 0; // Edges of the nearest neighbour or greedy path shown so far
+    public int revealedDistance = 0; // Their total length
+    int[] revealedPairs; // Node pairs of those edges, filled in from the step queue
+
+    // Nearest neighbour and greedy paths are worked out on their own thread and handed over one edge at a time
+    final int STEP_QUEUE_CAPACITY = 65536,
+              REVEAL_FRAMES = 300; // Frames the path takes to appear when stepsPerFrame is 0
+    Thread constructionThread;
+    CancellationToken constructionToken;
+    StepQueue constructionSteps;
+
+    // Coordinates of the current nodes, shared by every algorithm. Rebuilt whenever the nodes are recalculated
+    Instance instance;
+    TourCanvas tourCanvas; // The nodes and paths are all drawn on here, behind the text and buttons
 
     public static void main(String[] args) {
         launch(args);
@@ -58,6 +71,34 @@ public class Main extends Application {
 
         window = primaryStage;
 
+        String seedParameter = getParameters().getNamed().get("seed");
+        if (seedParameter != null) {
+            try {
+                seed = Long.parseLong(seedParameter);
+            } catch (NumberFormatException ex) {
+                Alert seedError = new Alert(AlertType.ERROR);
+                seedError.setTitle("Error");
+                seedError.setContentText("--seed must be a whole number, not \"" + seedParameter + "\". Using a random seed instead.");
+                seedError.show();
+            }
+        }
+        String stepsParameter = getParameters().getNamed().get("steps-per-frame");
+        if (stepsParameter != null) {
+            try {
+                stepsPerFrame = Integer.parseInt(stepsParameter);
+
+                if (stepsPerFrame < 1) {
+                    throw new IllegalArgumentException();
+                }
+            } catch (IllegalArgumentException ex) { // Also catches NumberFormatException
+                stepsPerFrame = 0;
+                Alert stepsError = new Alert(AlertType.ERROR);
+                stepsError.setTitle("Error");
+                stepsError.setContentText("--steps-per-frame must be a whole number greater than 0, not \"" + stepsParameter + "\". Basing it on the number of nodes instead.");
+                stepsError.show();
+            }
+        }
+
         // index 0 genetic, index 1 nearest neighbor, index 2 greedy, index 3 manual
         ArrayList<Boolean> buttonSelected = new ArrayList<Boolean>();
         buttonSelected.add(false);
@@ -73,32 +114,25 @@ public class Main extends Application {
 
         ArrayList<Node> nodes = new ArrayList<Node>(); //Declaring and generating nodes
         generateNodes(nodes, numberOfNodes);
+        instance = Instance.fromNodes(nodes);
 
         Group visualizationRoot = new Group();
         visualization = new Scene(visualizationRoot, Color.BLACK);
 
-        GeneticAlgorithm geneticAlgo = new GeneticAlgorithm(populationSize, nodes);
-        TSPNearestNeighbour nearestAlgo = new TSPNearestNeighbour(nodes);
-        GreedyAlgorithm greedyAlgo = new GreedyAlgorithm(nodes);
-        ManualPath manualPath = new ManualPath(nodes);
+        GeneticAlgorithm geneticAlgo = new GeneticAlgorithm(populationSize, instance, RandomStreams.derive(seed, -1));
+        GeneticAlgorithmWorker geneticWorker = new GeneticAlgorithmWorker(); // Runs geneticAlgo off the FX thread
+        TSPNearestNeighbour nearestAlgo = new TSPNearestNeighbour(instance);
+        GreedyAlgorithm greedyAlgo = new GreedyAlgorithm(instance);
+        ManualPath manualPath = new ManualPath(instance);
 
-        ArrayList<Line> lines = new ArrayList<>();
-        ArrayList<Line> relativeLines = new ArrayList<>();
-        ArrayList<Circle> circles = new ArrayList<>();
-        ArrayList<Node> manualPathOrder = new ArrayList<>();
         ArrayList<Label> circleLabels = new ArrayList<>();
 
         List<Double> bestDistance = new ArrayList<Double>();
         bestDistance.add(Double.POSITIVE_INFINITY);
 
-        // Printing nodes as circles
-        for(int i = 0; i < numberOfNodes; i++) {
-
-            Circle circle = new Circle(nodes.get(i).getX(), nodes.get(i).getY(), 8);
-            circle.setFill(Color.WHITE);
-            circles.add(circle);
-            visualizationRoot.getChildren().add(circles.get(i));
-        }
+        tourCanvas = new TourCanvas(windowWidth, windowHeight);
+        tourCanvas.setInstance(instance);
+        visualizationRoot.getChildren().add(tourCanvas);
 
 
                               /* **** SETTING UP SELECTION PANE **** */
@@ -193,32 +227,18 @@ public class Main extends Application {
 
                     nodes.clear(); //Declaring and generating nodes
                     generateNodes(nodes, numberOfNodes);
+                    instance = Instance.fromNodes(nodes);
 
                     // Algorithm object modifications
-                    geneticAlgo.modifyParameters(populationSize, nodes);
-                    nearestAlgo.setNodes(nodes);
-                    greedyAlgo.modifyNodes(nodes);
-
-                    // Remove previous circles
-                    for (Circle currCir : circles) {
-                        if (visualizationRoot.getChildren().contains(currCir)) {
-                            visualizationRoot.getChildren().remove(currCir);
-                        }
-                    }
-                    circles.clear();
-
-
-
-                    for (int i = 0; i < numberOfNodes; i++) { // Printing nodes as circles
-
-                        Circle circle = new Circle(nodes.get(i).getX(), nodes.get(i).getY(), 10);
-                        circle.setFill(Color.WHITE);
-                        circles.add(circle);
-                    }
-
-                    for (Circle currCir : circles) {
-                        visualizationRoot.getChildren().add(currCir);
-                    }
+                    geneticWorker.stop();
+                    stopConstruction();
+                    geneticAlgo.modifyParameters(populationSize, instance);
+                    nearestAlgo.setInstance(instance);
+                    greedyAlgo.modifyInstance(instance);
+                    manualPath.setInstance(instance);
+
+                    tourCanvas.setInstance(instance);
+                    tourCanvas.clearPaths();
                 }
             }
         };
@@ -247,8 +267,11 @@ public class Main extends Application {
                     buttonSelected.set(2, false); // greedy
                     buttonSelected.set(3, false); // manual
 
+                    geneticWorker.stop();
                     geneticAlgo.resetBestRecordedDistance();
                     bestDistance.set(0, Double.POSITIVE_INFINITY);
+                    drawnPopulationCount = -1;
+                    geneticWorker.start(geneticAlgo);
             }
         };
 
@@ -360,6 +383,9 @@ public class Main extends Application {
 
                 // Reset everything from the algorithms:
 
+                geneticWorker.stop();
+                stopConstruction();
+
                 populationCountText.setText("");
                 bestDistanceText.setText("");
 
@@ -376,23 +402,11 @@ public class Main extends Application {
                 nearestPathFinished = false;
                 greedyPathFinished = false;
                 manualPathStarted = false;
-                manualPathDistance = 0;
-                manualPathOrder.clear();
+                manualPath.clear();
 
-                // Clear all lines from previous algorithms.
-                for (Line line : lines) {
-                    if (visualizationRoot.getChildren().contains(line)) {
-                        visualizationRoot.getChildren().remove(line);
-                    }
-                }
-                lines.clear();
-
-                for (Line line : relativeLines) {
-                    if (visualizationRoot.getChildren().contains(line)) {
-                        visualizationRoot.getChildren().remove(line);
-                    }
-                }
-                relativeLines.clear();
+                // Clear all paths from previous algorithms.
+                tourCanvas.clearPaths();
+                tourCanvas.setOnMouseClicked(null);
             }
         };
 
@@ -407,26 +421,13 @@ public class Main extends Application {
             @Override
             public void handle(MouseEvent event) {
                 if (manualPathStarted) {
-                    for (int i = 0; i < nodes.size(); i++) {
-                        // If the mouse click was on this node
-                        if (event.getSceneX() >= nodes.get(i).getX() - 8 &&
-                            event.getSceneX() <= nodes.get(i).getX() + 8 &&
-                            event.getSceneY() >= nodes.get(i).getY() - 8 &&
-                            event.getSceneY() <= nodes.get(i).getY() + 8)
-                        {
-                            manualPathOrder.add(nodes.get(i));
-                            if (manualPathOrder.size() > 1) {  // If this isn't the first node selected
-                                Node node1 = manualPathOrder.get(manualPathOrder.size() - 2), // Second to last node
-                                     node2 = manualPathOrder.get(manualPathOrder.size() - 1); // Last node
-
-                                Line line = new Line(node1.getX(), node1.getY(), node2.getX(), node2.getY());
-                                line.setStroke(Color.DARKBLUE);
-                                line.setStrokeWidth(5);
-                                lines.add(line);
-
-                                manualPathDistance += manualPath.calcEdgeLength(node1, node2);
-                            }
-                        }
+                    // The node the mouse click was on, if any
+                    int node = manualPath.nodeAt(event.getSceneX(), event.getSceneY(), TourCanvas.NODE_RADIUS);
+                    if (node >= 0) {
+                        manualPath.addNode(node);
+
+                        tourCanvas.setPath(manualPath.getOrder(), 5);
+                        tourCanvas.setVisibleCount(manualPath.size() - 1);
                     }
                 }
             }
@@ -434,154 +435,90 @@ public class Main extends Application {
 
 
         ///////////////////////////////////////////////////////////////////// Event handler for algorithms
-        EventHandler event = new EventHandler<ActionEvent>() {
+        // Runs once per frame. The algorithms only hand over their paths; the canvas draws them when they change
+        AnimationTimer frameTimer = new AnimationTimer() {
             @Override
-            public void handle(ActionEvent event) {
+            public void handle(long now) {
+                updateFrame();
+                tourCanvas.render();
+            }
+
+            private void updateFrame() {
 
                 if (buttonSelected.get(0) == true) { // Genetic Algorithm was selected
 
-                    int order[] = geneticAlgo.runGeneticAlgorithm();
-                    int relativeOrder[] = geneticAlgo.getRelativePath();
+                    // The worker runs the generations; draw the latest snapshot if it is new
+                    GeneticAlgorithmWorker.Snapshot snapshot = geneticWorker.getLatest();
+                    if (snapshot == null || snapshot.getPopulationCount() == drawnPopulationCount) {
+                        return;
+                    }
+                    drawnPopulationCount = snapshot.getPopulationCount();
 
                     if (!visualizationRoot.getChildren().contains(populationCountText)) {
                         visualizationRoot.getChildren().add(populationCountText);
                     }
-                    populationCountText.setText("Populations generated: " + geneticAlgo.getPopulationCount());
+                    populationCountText.setText("Populations generated: " + snapshot.getPopulationCount());
 
-                    if (geneticAlgo.getBestRecordedDistance() < bestDistance.get(0)) {
+                    tourCanvas.setInstance(snapshot.getInstance());
 
-                        bestDistance.set(0, geneticAlgo.getBestRecordedDistance());
+                    if (snapshot.getBestDistance() < bestDistance.get(0)) {
 
-                        bestDistanceText.setText("Best Distance: " + String.format("%.2f", geneticAlgo.getBestRecordedDistance()));
+                        bestDistance.set(0, snapshot.getBestDistance());
 
-                        for (Line curr : lines) {
-                            if (visualizationRoot.getChildren().contains(curr)) {
-                                visualizationRoot.getChildren().remove(curr);
-                            }
-                        }
-
-                        lines.clear();
-
-                        for (int i = 0; i < geneticAlgo.getNumberOfNodes(); i++) {
+                        bestDistanceText.setText("Best Distance: " + String.format("%.2f", snapshot.getBestDistance()));
 
-                            if ((i + 1) >= geneticAlgo.getNumberOfNodes()) {
-                                break;
-                            }
-
-                            Line line = new Line(geneticAlgo.getNodes().get(order[i]).getX(), geneticAlgo.getNodes().get(order[i]).getY(),
-                                    geneticAlgo.getNodes().get(order[i + 1]).getX(), geneticAlgo.getNodes().get(order[i + 1]).getY());
-                            line.setStroke(Color.DARKBLUE);
-                            line.setStrokeWidth(7);
-
-                            lines.add(line);
-                        }
-
-                        for (Line curr : lines) {
-                            visualizationRoot.getChildren().add(curr);
-                        }
-                    }
-
-                    for (Line curr : relativeLines) {
-                        if (visualizationRoot.getChildren().contains(curr)) {
-                            visualizationRoot.getChildren().remove(curr);
-                        }
+                        tourCanvas.setPath(snapshot.getBestPath(), 7);
                     }
 
-                    relativeLines.clear();
-
-                    for (int i = 0; i < geneticAlgo.getNumberOfNodes(); i++) {
-
-                        if ((i + 1) >= geneticAlgo.getNumberOfNodes()) {
-                            break;
-                        }
-
-                        Line line = new Line(geneticAlgo.getNodes().get(relativeOrder[i]).getX(), geneticAlgo.getNodes().get(relativeOrder[i]).getY(),
-                                geneticAlgo.getNodes().get(relativeOrder[i + 1]).getX(), geneticAlgo.getNodes().get(relativeOrder[i + 1]).getY());
-                        line.setStroke(Color.DARKBLUE);
-                        line.setStrokeWidth(2);
-                        line.setOpacity(0.6);
-
-                        relativeLines.add(line);
-                    }
-
-                    for (Line curr : relativeLines) {
-                        visualizationRoot.getChildren().add(curr);
-                    }
+                    tourCanvas.setCurrentPath(snapshot.getRelativePath());
 
                 } else if (buttonSelected.get(1) == true) { // nearest Algorithm was selected
 
                     if (nearestPathFinished == false) {
-                        ArrayList<Integer> tspPath = nearestAlgo.calcPath();
-
-                        int pathDistance = 0;
-
-                        for (int i = 0; i < tspPath.size() - 1; i++) {
-                            Node node1 = nodes.get(tspPath.get(i)),
-                                 node2 = nodes.get(tspPath.get(i + 1));
-
-                            pathDistance += nearestAlgo.calcEdgeLength(node1, node2);
-
-                            Line line = new Line(node1.getX(), node1.getY(), node2.getX(), node2.getY());
-                            line.setStroke(Color.DARKBLUE);
-                            line.setStrokeWidth(5);
-
-                            lines.add(line);
-                        }
-
-                        bestDistanceText.setText("Nearest Neighbour Algorithm distance: " + pathDistance);
+                        StepQueue steps = startConstruction();
+                        nearestAlgo.setStepQueue(steps);
+                        CancellationToken token = constructionToken;
+                        constructionThread = new Thread(() -> {
+                            nearestAlgo.calcPath(token);
+                            nearestAlgo.setStepQueue(null);
+                        }, "nearest-neighbour");
+                        constructionThread.setDaemon(true);
+                        constructionThread.start();
 
                         nearestPathFinished = true;
                     }
-                    for (Line line : lines) {
-                        if (!visualizationRoot.getChildren().contains(line)) {
-                            visualizationRoot.getChildren().add(line);
-                            break;
-                        }
-                    }
+
+                    revealSteps();
+                    bestDistanceText.setText("Nearest Neighbour Algorithm distance: " + revealedDistance);
 
                 } else if (buttonSelected.get(2) == true) { // greedy algorithm was selected
 
                     if (greedyPathFinished == false) {
-                        ArrayList<GreedyAlgorithm.Edge> tspPath = greedyAlgo.calcPath();
-
-                        System.out.println(greedyAlgo.getNodes().size() + "!!");
-
-                        int pathDistance = 0; // updated as each edge is added
-
-                        for (int i = 0; i < tspPath.size(); i++) {
-                            // Access the nodes referenced in the edge
-                            Node node1, node2;
-                            node1 = greedyAlgo.getNodes().get(tspPath.get(i).getNode1Index());
-                            node2 = greedyAlgo.getNodes().get(tspPath.get(i).getNode2Index());
-
-                            pathDistance += tspPath.get(i).getLength();
-
-                            Line line = new Line(node1.getX(), node1.getY(), node2.getX(), node2.getY());
-                            line.setStroke(Color.DARKBLUE);
-                            line.setStrokeWidth(5);
-
-                            lines.add(line);
-                        }
-
-                        bestDistanceText.setText("Greedy algorithm distance: " + pathDistance);
+                        StepQueue steps = startConstruction();
+                        greedyAlgo.setStepQueue(steps);
+                        CancellationToken token = constructionToken;
+                        constructionThread = new Thread(() -> {
+                            greedyAlgo.calcPath(token);
+                            greedyAlgo.setStepQueue(null);
+                        }, "greedy");
+                        constructionThread.setDaemon(true);
+                        constructionThread.start();
 
                         greedyPathFinished = true;
                     }
 
-                    for (Line line : lines) {
-                        if (!visualizationRoot.getChildren().contains(line)) {
-                            visualizationRoot.getChildren().add(line);
-                            break;
-                        }
-                    }
+                    revealSteps();
+                    bestDistanceText.setText("Greedy algorithm distance: " + revealedDistance);
                 }
                 else if (buttonSelected.get(3) == true) { // Manual path selected
                     if (manualPathStarted == false) {
-                        for (int i = 0; i < circles.size(); i++) {
-                            circles.get(i).setOnMouseClicked(manualPathEvent);
+                        tourCanvas.setOnMouseClicked(manualPathEvent);
+
+                        // Numbering tens of thousands of nodes would only slow the window down without being readable
+                        for (int i = 0; i < nodes.size() && nodes.size() <= TourCanvas.DOT_LIMIT; i++) {
                             Label label = new Label(String.valueOf(i));
-                            label.setLayoutX(circles.get(i).getCenterX() + 10);
-                            label.setLayoutY(circles.get(i).getCenterY());
+                            label.setLayoutX(nodes.get(i).getX() + 10);
+                            label.setLayoutY(nodes.get(i).getY());
                             label.setTextFill(Paint.valueOf("WHITE"));
 
                             circleLabels.add(label);
@@ -591,25 +528,12 @@ public class Main extends Application {
                         manualPathStarted = true;
                     }
 
-                    for (Line line : lines) {
-                        if (!visualizationRoot.getChildren().contains(line)) {
-                            visualizationRoot.getChildren().add(line);
-                            break;
-                        }
-                    }
-
-                    bestDistanceText.setText("Manual distance: " + manualPathDistance);
+                    bestDistanceText.setText("Manual distance: " + (int) manualPath.getDistance());
                 }
             }
         };
 
-
-
-        KeyFrame frame = new KeyFrame(Duration.millis(100), event);
-        Timeline theTimeline = new Timeline(frame);
-
-        theTimeline.setCycleCount(Timeline.INDEFINITE);
-        theTimeline.play();
+        frameTimer.start();
 
         window.setWidth(windowWidth);
         window.setHeight(windowHeight - 200);
@@ -619,9 +543,62 @@ public class Main extends Application {
         window.show();
     }
 
+    // Get a new step queue and token ready for a construction thread, and an empty path on the canvas for its edges
+    private StepQueue startConstruction() {
+        stopConstruction();
+
+        constructionToken = new CancellationToken();
+        constructionSteps = new StepQueue(STEP_QUEUE_CAPACITY);
+        revealedPairs = new int[2 * instance.size()]; // A tour has as many edges as nodes
+        revealedEdges = 0;
+        revealedDistance = 0;
+
+        tourCanvas.setEdges(revealedPairs);
+        tourCanvas.setVisibleCount(0);
+        return constructionSteps;
+    }
+
+    // Draw the next few edges the construction thread has put in the queue
+    private void revealSteps() {
+        if (constructionSteps == null) {
+            return;
+        }
+
+        int steps = stepsPerFrame > 0 ? stepsPerFrame : Math.max(1, instance.size() / REVEAL_FRAMES);
+        DistanceOracle distances = instance.getDistances();
+
+        constructionSteps.drain(steps, (from, to) -> {
+            if (revealedEdges < revealedPairs.length / 2) {
+                revealedPairs[2 * revealedEdges] = from;
+                revealedPairs[2 * revealedEdges + 1] = to;
+                revealedEdges++;
+                revealedDistance += distances.distance(from, to);
+            }
+        });
+        tourCanvas.setVisibleCount(revealedEdges);
+    }
+
+    // Cancel the construction thread, if there is one, and wait for it to finish
+    private void stopConstruction() {
+        if (constructionThread == null) {
+            return;
+        }
+
+        constructionToken.cancel();
+        constructionSteps.cancel(); // Lets it go if it is waiting for room in the queue
+        try {
+            constructionThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        constructionThread = null;
+        constructionSteps = null;
+    }
+
     public static void generateNodes(ArrayList<Node> nodes, int numberOfNodes) {
 
-        Random rand = new Random();
+        SplittableRandom rand = RandomStreams.stream(seed, layoutsGenerated++);
 
         for (int i = 0; i < numberOfNodes; i++) {
 
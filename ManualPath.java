@@ -4,26 +4,96 @@
 // December 7, 2021
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+/*
+ * The path grows one clicked node at a time, so the nodes are kept in an int[] that doubles when it
+ * fills up and the distance is updated with just the new edge. Clicks are matched to nodes with a k-d
+ * tree over the instance, built the first time it is needed, so a click costs about O(log n) on top
+ * of the drawing however many nodes there are.
+ */
 public class ManualPath {
-    ArrayList<Node> nodes;
-    ArrayList<Integer> path;
+    Instance instance;
+    DistanceOracle distances;
+    KdTree nodeIndex; // For finding the clicked node, null until the first click
+    int[] order = new int[16]; // Clicked nodes, in order; only the first size entries are used
+    int size;
+    double distance; // Length of the path so far
 
-    public ManualPath(ArrayList<Node> nodes) {
-        setNodes(nodes);
-        path = new ArrayList<>();
+    public ManualPath(Instance instance) {
+        setInstance(instance);
     }
 
-    public void setNodes(ArrayList<Node> nodes) {
-        this.nodes = nodes;
+    // Use a new set of nodes, which also starts a new path
+    public void setInstance(Instance instance) {
+        this.instance = instance;
+        this.distances = instance.getDistances();
+        nodeIndex = null;
+        clear();
+    }
+
+    // Forget the clicked nodes
+    public void clear() {
+        size = 0;
+        distance = 0;
+    }
+
+    /*
+     * The node closest to the point (x, y), if it is no more than radius away, otherwise -1.
+     * When nodes overlap, the click goes to the one whose centre is closest.
+     */
+    public int nodeAt(double x, double y, double radius) {
+        if (nodeIndex == null)
+            nodeIndex = new KdTree(instance);
+        return nodeIndex.nearestWithin(x, y, radius);
+    }
+
+    // Add a node to the end of the path and return the new length
+    public double addNode(int node) {
+        if (size == order.length)
+            order = Arrays.copyOf(order, 2 * size);
+        order[size++] = node;
+        if (size > 1)
+            distance += calcEdgeLength(order[size - 2], node);
+        return distance;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    // Number of nodes clicked so far
+    public int size() {
+        return size;
+    }
+
+    /*
+     * The clicked nodes in order. This is the array the path is kept in, which makes it cheap to hand
+     * to the canvas after every click; only its first size() entries mean anything, and it is replaced
+     * by a bigger one when it fills up.
+     */
+    public int[] getOrder() {
+        return order;
     }
 
     public ArrayList<Integer> getPath() {
+        ArrayList<Integer> path = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            path.add(order[i]);
         return path;
     }
 
+    /*
+     * The clicked path as a tour array, without the click back to the start. Manual paths aren't a
+     * Solver, since they come from the user instead of being computed, but the array is in the same
+     * canonical form as the solvers' tours once every node has been clicked.
+     */
+    public int[] getTour() {
+        return Tours.canonical(Tours.fromPath(getPath()));
+    }
+
     // Calculate the length of an edge
-    public double calcEdgeLength(Node nodeA, Node nodeB) {
-        return Math.hypot(nodeA.getX() - nodeB.getX(), nodeA.getY() - nodeB.getY());
+    public double calcEdgeLength(int nodeA, int nodeB) {
+        return distances.distance(nodeA, nodeB);
     }
 }
@@ -0,0 +1,119 @@
+// Registry of counters and gauges the solvers update while they run, for reading from outside
+// CSC 242-01
+// December 7, 2021
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Metrics are pull-based: the solvers only add to counters and set gauges, and whoever is interested
+ * (BatchSolver's --metrics, a monitoring thread) reads a snapshot() whenever it likes and works out rates
+ * from the difference between two snapshots. Counters are LongAdders, so solvers on several threads
+ * (islands, portfolio runs) can add to the same one without fighting over a single memory location.
+ *
+ * Everything is off until setEnabled(true). While it is off, add() and set() return after reading one
+ * volatile flag, and the solvers check isEnabled() once per generation or run rather than per step,
+ * so leaving the calls in costs next to nothing. The same numbers also go out as Flight Recorder events
+ * (see SolverEvents), which are controlled by the recording settings instead of this flag.
+ */
+public class Metrics {
+
+    // A count that only goes up, like generations run or edges considered
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void add(long amount) {
+            if (enabled)
+                value.add(amount);
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // A value that can go either way, like the best length so far
+    public static class Gauge {
+        private volatile double value = Double.NaN;
+
+        public void set(double value) {
+            if (enabled)
+                this.value = value;
+        }
+
+        public double get() {
+            return value;
+        }
+    }
+
+    private static volatile boolean enabled = false;
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // The counter with this name, made the first time it is asked for. Keep it rather than looking it up every time
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    // The gauge with this name, made the first time it is asked for
+    public static Gauge gauge(String name) {
+        return gauges.computeIfAbsent(name, key -> new Gauge());
+    }
+
+    // Current value of every counter and gauge that has been set, sorted by name
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> {
+            if (!Double.isNaN(gauge.get()))
+                values.put(name, gauge.get());
+        });
+        return values;
+    }
+
+    /*
+     * Listener that records every improvement it is told about, as the gauge "<solver>.best_length", the
+     * counter "<solver>.improvements" and an Improvement event, before passing it on. Returns the listener
+     * itself if neither metrics nor the event are on, so solvers that skip work when nobody is listening
+     * still can.
+     */
+    public static ProgressListener track(ProgressListener listener) {
+        if (!enabled && !SolverEvents.isRecording())
+            return listener;
+
+        return (solver, step, length, elapsed) -> {
+            gauge(solver + ".best_length").set(length);
+            counter(solver + ".improvements").increment();
+
+            if (SolverEvents.isRecording()) {
+                SolverEvents.Improvement event = new SolverEvents.Improvement();
+                if (event.isEnabled()) {
+                    event.solver = solver;
+                    event.step = step;
+                    event.length = length;
+                    event.elapsed = elapsed;
+                    event.commit();
+                }
+            }
+
+            listener.improved(solver, step, length, elapsed);
+        };
+    }
+}
@@ -0,0 +1,136 @@
+// Or-opt local search: moving short segments of the tour to a better place
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * An Or-opt move cuts a segment of one to three cities out of the tour, closes the gap, and puts the
+ * segment back between two other cities, either way round. The segment is only moved next to one of
+ * the nearest neighbours of its first city, and only if that is closer than the gain from cutting it out.
+ *
+ * The move is applied as two or three 2-opt moves in a row, so it works on the same ArrayTour (and journal)
+ * as the other local searches. Cities are taken from a work queue with don't look bits, as in TwoOpt.
+ */
+public class OrOpt {
+    public static final int MAX_SEGMENT_LENGTH = 3;
+    private static final double EPSILON = 1e-7; // Improvements smaller than this are treated as rounding noise
+
+    private final DistanceOracle distances;
+    private final CandidateLists candidates;
+    private int movesApplied;
+
+    public OrOpt(Instance instance) {
+        this(instance, new CandidateLists(instance, TwoOpt.DEFAULT_NEIGHBOURS));
+    }
+
+    public OrOpt(Instance instance, CandidateLists candidates) {
+        this.distances = instance.getDistances();
+        this.candidates = candidates;
+    }
+
+    // Improve a tour until no Or-opt move shortens it. The given array is not changed
+    public int[] improve(int[] order) {
+        ArrayTour tour = new ArrayTour(order);
+        improve(tour);
+        return tour.toArray();
+    }
+
+    // Improve the tour in place
+    public void improve(ArrayTour tour) {
+        int n = tour.size();
+        if (n < MAX_SEGMENT_LENGTH + 5)
+            return;
+
+        WorkQueue queue = new WorkQueue(n);
+        for (int i = 0; i < n; i++)
+            queue.push(tour.cityAt(i));
+
+        while (!queue.isEmpty()) {
+            int a = queue.pop();
+            if (improveCity(tour, a, queue) < 0)
+                queue.push(a);
+        }
+    }
+
+    // Number of moves applied since this object was made
+    public int getMovesApplied() {
+        return movesApplied;
+    }
+
+    /*
+     * Look for one improving move of a segment that starts at city a (going either way along the tour) and apply it.
+     * Returns the change in tour length, or 0 if no move was found.
+     */
+    double improveCity(ArrayTour tour, int a, WorkQueue queue) {
+        if (tour.size() < MAX_SEGMENT_LENGTH + 5)
+            return 0;
+
+        for (int direction = 0; direction < 2; direction++) {
+            boolean forward = direction == 0;
+            int s1 = a, s2 = a, middle = a;
+            int p = step(tour, s1, !forward);
+
+            for (int length = 1; length <= MAX_SEGMENT_LENGTH; length++) {
+                if (length > 1) {
+                    middle = s2;
+                    s2 = step(tour, s2, forward);
+                }
+                int nx = step(tour, s2, forward);
+
+                double removeGain = distances.distance(p, s1) + distances.distance(s2, nx) - distances.distance(p, nx);
+                if (removeGain <= EPSILON)
+                    continue;
+
+                for (int i = 0; i < candidates.getK(); i++) {
+                    int c = candidates.get(s1, i);
+                    double addedCS1 = distances.distance(c, s1);
+                    if (addedCS1 >= removeGain)
+                        break;
+                    if (c == s1 || c == middle || c == s2)
+                        continue;
+
+                    // Put s1 next to c, with the segment on either side of it
+                    for (int side = 0; side < 2; side++) {
+                        int e = step(tour, c, side == 0 ? forward : !forward);
+                        if (e == s1 || e == middle || e == s2)
+                            continue;
+
+                        // (from, to) is the edge the segment goes into, oriented the same way as p -> s1
+                        int from = side == 0 ? c : e, to = side == 0 ? e : c;
+                        if (from == nx || to == p)
+                            continue; // Moving the segment next to where it already is
+
+                        double delta = addedCS1 + distances.distance(s2, e) - distances.distance(c, e) - removeGain;
+                        if (delta < -EPSILON) {
+                            apply(tour, p, s1, s2, nx, from, to, side == 0);
+                            movesApplied++;
+                            queue.push(p);
+                            queue.push(nx);
+                            queue.push(s1);
+                            queue.push(s2);
+                            queue.push(c);
+                            queue.push(e);
+                            return delta;
+                        }
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Move the segment s1..s2 (which sits between p and nx) into the edge (from, to). p -> s1 and from -> to
+     * must point the same way along the tour. The result is from s1..s2 to if keepOrientation is set,
+     * otherwise from s2..s1 to. This is also used by LinKernighan to swap two neighbouring segments.
+     */
+    static void apply(ArrayTour tour, int p, int s1, int s2, int nx, int from, int to, boolean keepOrientation) {
+        tour.twoOptMove(p, s1, from, to); // p from ... nx s2..s1 to
+        tour.twoOptMove(p, from, nx, s2); // p nx ... from s2..s1 to
+        if (keepOrientation)
+            tour.twoOptMove(from, s2, s1, to); // from s1..s2 to
+    }
+
+    private static int step(ArrayTour tour, int city, boolean forward) {
+        return forward ? tour.next(city) : tour.prev(city);
+    }
+}
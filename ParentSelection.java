@@ -0,0 +1,233 @@
+// Ways of picking the parents for the next generation of the genetic algorithm
+// CSC 242-01
+// December 7, 2021
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+ * prepare() is called once per generation, after the population has been scored, and then pick() once
+ * for every parent. The tables each method needs are made once, when it is created for a population
+ * size, so picking parents doesn't allocate anything.
+ *
+ *  - ROULETTE walks the fitness array until the random number runs out: O(P) per parent. This is the
+ *    original method and still the default.
+ *  - PREFIX_SUM picks with the same probabilities by binary searching the running sums: O(log P).
+ *  - ALIAS picks with the same probabilities from a Walker alias table: O(1).
+ *  - TOURNAMENT takes the shortest of TOURNAMENT_SIZE random population sets: O(1), no prepare() at all.
+ *  - RANK sorts the population by length and picks the set ranked r-th from the bottom with probability
+ *    proportional to r, so the pressure doesn't depend on how far apart the lengths are: O(1) per parent.
+ */
+public abstract class ParentSelection {
+
+    public enum Method {
+        ROULETTE, PREFIX_SUM, ALIAS, TOURNAMENT, RANK
+    }
+
+    public static final int TOURNAMENT_SIZE = 3;
+
+    private final Method method;
+
+    private ParentSelection(Method method) {
+        this.method = method;
+    }
+
+    public static ParentSelection create(Method method, int populationSize) {
+        switch (method) {
+            case ROULETTE:
+                return new Roulette();
+            case PREFIX_SUM:
+                return new PrefixSum(populationSize);
+            case ALIAS:
+                return new Alias(populationSize);
+            case TOURNAMENT:
+                return new Tournament();
+            case RANK:
+                return new Rank(populationSize);
+            default:
+                throw new IllegalArgumentException("Unknown selection method " + method);
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    // fitness sums to 1, and tourLengths[i] is the length of population set i
+    abstract void prepare(double[] fitness, double[] tourLengths);
+
+    abstract int pick(SplittableRandom rand);
+
+    private static class Roulette extends ParentSelection {
+        private double[] fitness;
+
+        Roulette() {
+            super(Method.ROULETTE);
+        }
+
+        @Override
+        void prepare(double[] fitness, double[] tourLengths) {
+            this.fitness = fitness;
+        }
+
+        @Override
+        int pick(SplittableRandom rand) {
+            int index = 0;
+            double portion = rand.nextDouble();
+
+            while (portion > 0 && index < fitness.length) { // Rounding can leave the fitness sum a hair under 1
+                portion = portion - fitness[index];
+                index++;
+            }
+            return index - 1;
+        }
+    }
+
+    private static class PrefixSum extends ParentSelection {
+        private final double[] sums; // sums[i] is the fitness of population sets 0 to i
+
+        PrefixSum(int populationSize) {
+            super(Method.PREFIX_SUM);
+            sums = new double[populationSize];
+        }
+
+        @Override
+        void prepare(double[] fitness, double[] tourLengths) {
+            double sum = 0;
+            for (int i = 0; i < sums.length; i++) {
+                sum += fitness[i];
+                sums[i] = sum;
+            }
+        }
+
+        @Override
+        int pick(SplittableRandom rand) {
+            double portion = rand.nextDouble() * sums[sums.length - 1];
+
+            // First running sum above the portion
+            int low = 0, high = sums.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sums[middle] > portion)
+                    high = middle;
+                else
+                    low = middle + 1;
+            }
+            return low;
+        }
+    }
+
+    /*
+     * Vose's version of Walker's alias method. Every population set gets a column of height 1/P; column i
+     * holds as much of set i's probability as fits, and the rest of it is filled by set alias[i].
+     * Picking is one random column and one random height.
+     */
+    private static class Alias extends ParentSelection {
+        private final double[] threshold; // Chance of staying with column i instead of going to alias[i]
+        private final int[] alias;
+        private final int[] small, large; // Work lists of columns under and over height 1
+
+        Alias(int populationSize) {
+            super(Method.ALIAS);
+            threshold = new double[populationSize];
+            alias = new int[populationSize];
+            small = new int[populationSize];
+            large = new int[populationSize];
+        }
+
+        @Override
+        void prepare(double[] fitness, double[] tourLengths) {
+            int n = threshold.length;
+            double sum = 0;
+            for (int i = 0; i < n; i++)
+                sum += fitness[i];
+
+            int smallCount = 0, largeCount = 0;
+            for (int i = 0; i < n; i++) {
+                threshold[i] = fitness[i] * n / sum;
+                alias[i] = i;
+                if (threshold[i] < 1)
+                    small[smallCount++] = i;
+                else
+                    large[largeCount++] = i;
+            }
+
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[largeCount - 1];
+
+                alias[less] = more;
+                threshold[more] -= 1 - threshold[less];
+                if (threshold[more] < 1) {
+                    largeCount--;
+                    small[smallCount++] = more;
+                }
+            }
+
+            // Whatever is left is 1 give or take rounding
+            while (largeCount > 0)
+                threshold[large[--largeCount]] = 1;
+            while (smallCount > 0)
+                threshold[small[--smallCount]] = 1;
+        }
+
+        @Override
+        int pick(SplittableRandom rand) {
+            int column = rand.nextInt(threshold.length);
+            return rand.nextDouble() < threshold[column] ? column : alias[column];
+        }
+    }
+
+    private static class Tournament extends ParentSelection {
+        private double[] tourLengths;
+
+        Tournament() {
+            super(Method.TOURNAMENT);
+        }
+
+        @Override
+        void prepare(double[] fitness, double[] tourLengths) {
+            this.tourLengths = tourLengths;
+        }
+
+        @Override
+        int pick(SplittableRandom rand) {
+            int winner = rand.nextInt(tourLengths.length);
+            for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+                int challenger = rand.nextInt(tourLengths.length);
+                if (tourLengths[challenger] < tourLengths[winner])
+                    winner = challenger;
+            }
+            return winner;
+        }
+    }
+
+    private static class Rank extends ParentSelection {
+        private final long[] sorted; // Length as float bits in the high half, index in the low half, shortest first
+
+        Rank(int populationSize) {
+            super(Method.RANK);
+            sorted = new long[populationSize];
+        }
+
+        @Override
+        void prepare(double[] fitness, double[] tourLengths) {
+            // Float bits of lengths (never negative) sort the same way as the lengths
+            for (int i = 0; i < sorted.length; i++)
+                sorted[i] = (long) Float.floatToIntBits((float) tourLengths[i]) << 32 | i;
+            Arrays.sort(sorted);
+        }
+
+        @Override
+        int pick(SplittableRandom rand) {
+            /*
+             * Counting from the longest set as m = 0, the set m has weight m + 1, so the weights up to and
+             * including m add up to (m + 1)(m + 2) / 2. Solving that for a random point in the total gives m directly.
+             */
+            long n = sorted.length;
+            double point = rand.nextDouble() * (n * (n + 1) / 2);
+            long m = Math.min((long) ((Math.sqrt(8 * point + 1) - 1) / 2), n - 1);
+            return (int) sorted[(int) (n - 1 - m)];
+        }
+    }
+}
@@ -0,0 +1,152 @@
+// Runs several solvers side by side on one instance and keeps the shortest tour
+// CSC 242-01
+// December 7, 2021
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * Every solver gets its own thread and all of them share one CancellationToken, whose deadline is the
+ * end of the time budget. When the budget is up (or every solver has finished) the token is cancelled,
+ * and the solvers get GRACE_PERIOD to
+ * hand in their best tour. A solver that doesn't make it in time is left out of the result; its thread
+ * is interrupted and, being a daemon, can't keep the program running.
+ */
+public class PortfolioRunner {
+    public static final long GRACE_PERIOD = 200; // Milliseconds
+
+    // Outcome of one run: the winning tour, and every solver's tour length (NaN if it had none)
+    public static class Result {
+        private final int[] tour;
+        private final double length;
+        private final String solver;
+        private final Map<String, Double> lengths;
+
+        Result(int[] tour, double length, String solver, Map<String, Double> lengths) {
+            this.tour = tour;
+            this.length = length;
+            this.solver = solver;
+            this.lengths = Collections.unmodifiableMap(lengths);
+        }
+
+        public int[] getTour() {
+            return tour.clone();
+        }
+
+        public double getLength() {
+            return length;
+        }
+
+        public String getSolver() {
+            return solver;
+        }
+
+        public Map<String, Double> getLengths() {
+            return lengths;
+        }
+    }
+
+    private final List<Solver> solvers;
+    private volatile CancellationToken token = new CancellationToken(); // Of the current run
+    private ProgressListener listener = ProgressListener.NONE;
+
+    // All the solvers must be working on the same instance
+    public PortfolioRunner(List<Solver> solvers) {
+        if (solvers.isEmpty())
+            throw new IllegalArgumentException("No solvers to run");
+        for (Solver solver : solvers)
+            if (solver.getInstance() != solvers.get(0).getInstance())
+                throw new IllegalArgumentException("The solvers are not all working on the same instance");
+        this.solvers = new ArrayList<>(solvers);
+    }
+
+    // Passed on to every solver. Called from the solver threads, possibly from several at once
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    // Stop the current run early, as if the budget had run out. Safe to call from any thread
+    public void cancel() {
+        token.cancel();
+    }
+
+    // Run every solver for at most budget milliseconds (plus the grace period) and return the best tour
+    public Result run(long budget) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+        CancellationToken token = CancellationToken.withDeadline(deadline);
+        this.token = token;
+        DistanceOracle distances = solvers.get(0).getInstance().getDistances();
+
+        ExecutorService executor = Executors.newFixedThreadPool(solvers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "portfolio-solver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<int[]>> running = new ArrayList<>();
+            for (Solver solver : solvers)
+                running.add(executor.submit(() -> solver.solve(token, listener)));
+
+            // Wait for the budget to run out or every solver to finish, whichever is first
+            for (Future<int[]> future : running) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || token.isCancelled())
+                    break;
+                try {
+                    future.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException | ExecutionException ex) {
+                    // Timed out: the budget is up. Failed: reported with the other results below
+                }
+            }
+            token.cancel();
+
+            long graceDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GRACE_PERIOD);
+            Map<String, Double> lengths = new LinkedHashMap<>();
+            int[] bestTour = null;
+            double bestLength = Double.POSITIVE_INFINITY;
+            String bestSolver = null;
+
+            for (int i = 0; i < solvers.size(); i++) {
+                String name = uniqueName(lengths, solvers.get(i).getName());
+                int[] tour = null;
+                try {
+                    tour = running.get(i).get(Math.max(0, graceDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException | ExecutionException ex) {
+                    running.get(i).cancel(true);
+                }
+
+                double length = tour == null ? Double.NaN : Tours.length(distances, tour);
+                lengths.put(name, length);
+                if (tour != null && length < bestLength) {
+                    bestTour = tour;
+                    bestLength = length;
+                    bestSolver = name;
+                }
+            }
+
+            if (bestTour == null)
+                throw new IllegalStateException("No solver finished within the budget");
+            return new Result(bestTour, bestLength, bestSolver, lengths);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Tell apart two solvers with the same name, like two genetic algorithms with different settings
+    private static String uniqueName(Map<String, Double> lengths, String name) {
+        String unique = name;
+        for (int copy = 2; lengths.containsKey(unique); copy++)
+            unique = name + "#" + copy;
+        return unique;
+    }
+}
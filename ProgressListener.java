@@ -0,0 +1,35 @@
+// Callback for following a solver while it runs
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * Solvers call improved() every time they have a shorter tour than before: the genetic algorithm and
+ * Lin-Kernighan whenever their best tour improves, the construction heuristics once when their tour is
+ * done. It is called on the solver's own thread, in the middle of its work, so it should return quickly
+ * (hand the numbers over to another thread rather than drawing or writing files in it).
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    ProgressListener NONE = (solver, step, length, elapsed) -> {
+    };
+
+    /*
+     * solver is the Solver's name, step how far it has got in its own terms (generations, kicks, cities
+     * placed), length the length of its best tour as a closed tour, and elapsed the nanoseconds since
+     * the token was made.
+     */
+    void improved(String solver, long step, double length, long elapsed);
+
+    // Listener that tells this one and then the other one
+    default ProgressListener andThen(ProgressListener other) {
+        if (other == NONE)
+            return this;
+        if (this == NONE)
+            return other;
+        return (solver, step, length, elapsed) -> {
+            improved(solver, step, length, elapsed);
+            other.improved(solver, step, length, elapsed);
+        };
+    }
+}
@@ -0,0 +1,40 @@
+// Seeds and random number streams shared by all the randomized solvers
+// CSC 242-01
+// December 7, 2021
+
+import java.util.SplittableRandom;
+
+/*
+ * Everything random in a run is driven by one seed, so the same seed always gives the same run.
+ * Work that is split up (between threads, islands, chunks of an array) gets its own stream for each
+ * piece, found from the seed and the piece's number alone. Which thread ends up doing which piece
+ * then makes no difference to the result, and no two threads ever share a generator, so there is no
+ * contention on a shared seed the way there is with Math.random().
+ */
+public final class RandomStreams {
+
+    private RandomStreams() {
+    }
+
+    // A fresh seed for when none was given. Print it somewhere so the run can be repeated
+    public static long newSeed() {
+        return new SplittableRandom().nextLong();
+    }
+
+    // Seed for piece number index of the work seeded with seed
+    public static long derive(long seed, long index) {
+        return mix(seed ^ mix(index + 0x9e3779b97f4a7c15L));
+    }
+
+    // Random number stream for piece number index of the work seeded with seed
+    public static SplittableRandom stream(long seed, long index) {
+        return new SplittableRandom(derive(seed, index));
+    }
+
+    // MurmurHash3's 64-bit finalizer: nearby inputs give unrelated outputs
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,27 @@
+// Common interface for the algorithms that build a whole tour on their own
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * A solver works on the instance it was made for and returns its tour in canonical form (see
+ * Tours.canonical), so tours from different solvers can be compared directly.
+ *
+ * Solvers that keep improving for as long as they are allowed to (the genetic algorithm, the local
+ * searches) run until the token is cancelled or its deadline passes, and then return the best tour they
+ * have. The others finish on their own; if they are cancelled first they still return a valid tour,
+ * finished off quickly without regard to length.
+ */
+public interface Solver {
+
+    // Short name for reports, like "greedy" or "ga"
+    String getName();
+
+    Instance getInstance();
+
+    default int[] solve(CancellationToken token) {
+        return solve(token, ProgressListener.NONE);
+    }
+
+    // Same, reporting every improvement to the listener as it happens
+    int[] solve(CancellationToken token, ProgressListener listener);
+}
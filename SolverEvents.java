@@ -0,0 +1,102 @@
+// Flight Recorder events for the solvers
+// CSC 242-01
+// December 7, 2021
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * Custom JDK Flight Recorder events, so a run can be looked inside without attaching a profiler:
+ *
+ *     java -XX:StartFlightRecording=filename=run.jfr,settings=profile BatchSolver ...
+ *     jfr print --events tsp.Generation run.jfr
+ *
+ * The events are only written while a recording has them turned on. Loading an event class starts up
+ * the Flight Recorder classes, which takes about a third of a second, so the solvers ask isRecording()
+ * before they make an event and never touch the event classes in a run without a recording. Once
+ * one is running, isEnabled() and shouldCommit() on the event say whether it is wanted.
+ */
+public class SolverEvents {
+
+    @Name("tsp.Generation")
+    @Label("Generation")
+    @Category("Travelling Salesman")
+    @Description("One generation of the genetic algorithm, with the time spent in each phase")
+    static class Generation extends Event {
+        @Label("Generation")
+        long generation;
+
+        @Label("Population Size")
+        int populationSize;
+
+        @Label("Best Length")
+        double bestLength;
+
+        @Label("Selection")
+        @Timespan(Timespan.NANOSECONDS)
+        long selection;
+
+        @Label("Crossover")
+        @Timespan(Timespan.NANOSECONDS)
+        long crossover;
+
+        @Label("Mutation")
+        @Timespan(Timespan.NANOSECONDS)
+        long mutation;
+
+        @Label("Fitness")
+        @Timespan(Timespan.NANOSECONDS)
+        long fitness;
+    }
+
+    @Name("tsp.Improvement")
+    @Label("Improvement")
+    @Category("Travelling Salesman")
+    @Description("A solver found a shorter tour")
+    static class Improvement extends Event {
+        @Label("Solver")
+        String solver;
+
+        @Label("Step")
+        long step;
+
+        @Label("Length")
+        double length;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("tsp.GreedyConstruction")
+    @Label("Greedy Construction")
+    @Category("Travelling Salesman")
+    @Description("One run of the greedy edge heuristic")
+    static class GreedyConstruction extends Event {
+        @Label("Nodes")
+        int nodes;
+
+        @Label("Edges Considered")
+        long edgesConsidered;
+
+        @Label("Cycle Checks")
+        long cycleChecks;
+
+        @Label("Find Steps")
+        @Description("Parent links followed by the union-find during cycle checks")
+        long findSteps;
+    }
+
+    // Whether Flight Recorder has been started, at launch or later with jcmd. Asking doesn't start it
+    static boolean isRecording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    private SolverEvents() {
+    }
+}
@@ -0,0 +1,93 @@
+// Bounded queue that carries the edges a construction heuristic adds, from its thread to the window
+// CSC 242-01
+// December 7, 2021
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * A ring buffer for exactly one producer thread (the solver) and one consumer thread (the JavaFX thread).
+ * Every step is one edge, packed into a long, so nothing is allocated per step. The producer writes
+ * the slot and then moves tail forward; the consumer reads the slot and then moves head forward.
+ * Both counters are volatile, so each side sees the other's slots once it sees the counter move,
+ * without any locks.
+ *
+ * When the buffer is full the producer waits for the consumer, which keeps the solver at most one
+ * buffer ahead of the animation and keeps memory bounded however big the instance is.
+ */
+public class StepQueue {
+
+    // Receives drained steps
+    public interface StepConsumer {
+        void accept(int from, int to);
+    }
+
+    private static final long PARK_NANOS = 100_000; // Producer's nap while the buffer is full
+
+    private final long[] steps;
+    private final int mask;
+    private volatile long head; // Next slot to read, only written by the consumer
+    private volatile long tail; // Next slot to write, only written by the producer
+    private volatile boolean finished; // The producer has added its last step
+    private volatile boolean cancelled; // The consumer doesn't want any more steps
+
+    public StepQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // Next power of two, so slots can be masked
+        steps = new long[size];
+        mask = size - 1;
+    }
+
+    /*
+     * Add the edge (from, to), waiting while the buffer is full. Returns false if the consumer has cancelled,
+     * in which case the producer should stop. Producer thread only.
+     */
+    public boolean put(int from, int to) {
+        long position = tail;
+        int spins = 0;
+        while (position - head >= steps.length) {
+            if (cancelled)
+                return false;
+            if (++spins < 100)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(PARK_NANOS);
+        }
+        if (cancelled)
+            return false;
+
+        steps[(int) (position & mask)] = ((long) from << 32) | (to & 0xffffffffL);
+        tail = position + 1;
+        return true;
+    }
+
+    // The producer has no more steps. Producer thread only
+    public void finish() {
+        finished = true;
+    }
+
+    // Hand up to max steps to the consumer and return how many there were. Consumer thread only
+    public int drain(int max, StepConsumer consumer) {
+        long position = head;
+        long available = Math.min(tail - position, max);
+
+        for (long i = 0; i < available; i++) {
+            long step = steps[(int) ((position + i) & mask)];
+            consumer.accept((int) (step >>> 32), (int) step);
+        }
+        head = position + available;
+        return (int) available;
+    }
+
+    // Whether the producer has finished and every step has been drained
+    public boolean isDone() {
+        return finished && head == tail;
+    }
+
+    // Stop taking steps and let a waiting producer go. Safe to call from any thread
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -4,51 +4,91 @@
 
 import java.util.ArrayList;
 
-public class TSPNearestNeighbour {
-    ArrayList<Node> nodes;
+public class TSPNearestNeighbour implements Solver {
+    Instance instance;
+    DistanceOracle distances;
     ArrayList<Integer> path;
+    StepQueue steps; // If set, every edge of the path is put in here as soon as it is chosen
 
-    public TSPNearestNeighbour(ArrayList<Node> nodes) {
-        setNodes(nodes);
+    public TSPNearestNeighbour(Instance instance) {
+        setInstance(instance);
     }
 
-    public void setNodes(ArrayList<Node> nodes) {
-        this.nodes = nodes;
+    public void setInstance(Instance instance) {
+        this.instance = instance;
+        this.distances = instance.getDistances();
+    }
+
+    // Send the edges of the path to the queue while calcPath() runs, and finish it at the end (null to stop)
+    public void setStepQueue(StepQueue steps) {
+        this.steps = steps;
+    }
+
+    public Instance getInstance() {
+        return instance;
+    }
+
+    @Override
+    public String getName() {
+        return "nearest";
+    }
+
+    @Override
+    public int[] solve(CancellationToken token, ProgressListener listener) {
+        listener = Metrics.track(listener);
+        int[] tour = Tours.canonical(Tours.fromPath(calcPath(token)));
+        if (listener != ProgressListener.NONE) // Measuring the tour is O(n), so only if someone is listening
+            listener.improved(getName(), tour.length, Tours.length(distances, tour), token.elapsed());
+        return tour;
     }
 
     public ArrayList<Integer> calcPath() {
+        return calcPath(new CancellationToken());
+    }
+
+    // If the token is cancelled before the path is done, the unvisited nodes are added in index order
+    public ArrayList<Integer> calcPath(CancellationToken token) {
         path = new ArrayList<>();
+        if (instance.size() == 0) { // No cities, so the path stays empty
+            if (steps != null)
+                steps.finish();
+            return path;
+        }
+
         int currentNode = 0;
         path.add(currentNode);
 
-        int[] visited = new int[nodes.size()];
-        visited[0] = 1;
-        for (int i = 1; i < visited.length; i++)
-            visited[i] = 0;
-
-        int counter = 1; // counts number of nodes added to the path
-        int minIndex = -1; // keeps track of the index of the closest node
-        double minValue, currentEdge; //
+        // Instead of checking every unvisited node on each step, keep the unvisited nodes in a k-d tree
+        // and remove each one as it is visited, so finding the closest one takes about O(log n)
+        KdTree unvisited = new KdTree(instance);
+        unvisited.remove(currentNode);
 
         // While the number of nodes in the path is less than each node that needs to be reached
-        while (counter < nodes.size()) {
-            minValue = Integer.MAX_VALUE;
-            for(int i = 0; i < nodes.size(); i++) {
-                if (visited[i] == 0) {
-                    currentEdge = calcEdgeLength(nodes.get(currentNode), nodes.get(i));
-                     if (currentEdge < minValue) {
-                         minValue = currentEdge;
-                         minIndex = i;
-                     }
-                }
+        while (unvisited.liveCount() > 0) {
+            if ((path.size() & (CancellationToken.CHECK_INTERVAL - 1)) == 0 && token.isCancelled()) {
+                boolean[] visited = new boolean[instance.size()];
+                for (int node : path)
+                    visited[node] = true;
+                for (int node = 0; node < instance.size(); node++)
+                    if (!visited[node])
+                        path.add(node);
+                break;
             }
+
+            int minIndex = unvisited.nearest(instance.getX(currentNode), instance.getY(currentNode));
+
             path.add(minIndex);
+            if (steps != null)
+                steps.put(currentNode, minIndex);
             currentNode = minIndex;
-            visited[minIndex] = 1;
-            counter++;
+            unvisited.remove(minIndex);
         }
 
         path.add(0);
+        if (steps != null) {
+            steps.put(path.get(path.size() - 2), 0);
+            steps.finish();
+        }
 
         return path;
     }
@@ -68,7 +108,7 @@ public class TSPNearestNeighbour {
     */
 
     // Calculate the length of an edge
-    public double calcEdgeLength(Node nodeA, Node nodeB) {
-        return Math.hypot(nodeA.getX() - nodeB.getX(), nodeA.getY() - nodeB.getY());
+    public double calcEdgeLength(int nodeA, int nodeB) {
+        return distances.distance(nodeA, nodeB);
     }
 }
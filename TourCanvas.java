@@ -0,0 +1,207 @@
+// Canvas that draws the nodes and the paths between them, for instances too big for one JavaFX node per line
+// CSC 242-01
+// December 7, 2021
+
+import java.util.BitSet;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineJoin;
+
+/*
+ * Everything is drawn straight from the primitive arrays: the node coordinates of the Instance and
+ * the int[] orders of the paths. There are three layers, drawn in this order:
+ *  - the nodes
+ *  - up to two paths (the best path, and a thin see-through one for the GA's current generation),
+ *    each a list of nodes joined in order
+ *  - a list of loose edges (for the greedy algorithm, which doesn't build the path in order)
+ * Each path or edge list shows only its first visibleCount edges, so it can be revealed step by step.
+ *
+ * Changing anything only sets a dirty flag; render() redraws when the flag is set and does nothing
+ * otherwise, so it can be called on every frame. A path is drawn as one polyline with a single
+ * stroke() call. Points that land within LOD_PIXELS of the last point drawn are skipped, so a
+ * path never has many more segments than the canvas has pixels across, however many nodes it has.
+ * Nodes shrink from circles to single pixels above DOT_LIMIT, and only one is drawn per pixel.
+ */
+public class TourCanvas extends Canvas {
+    public static final double NODE_RADIUS = 8;
+    public static final int DOT_LIMIT = 2000; // Above this many nodes, draw them as pixels
+    private static final double LOD_PIXELS = 1.0;
+
+    // One path or list of edges and how to draw it
+    private static class Layer {
+        int[] nodes; // Path order, or pairs of nodes for a list of edges
+        boolean pairs;
+        int visibleCount = Integer.MAX_VALUE; // Edges to draw
+        Color color;
+        double width;
+        double opacity = 1;
+
+        int edgeCount() {
+            if (nodes == null)
+                return 0;
+            return pairs ? nodes.length / 2 : Math.max(0, nodes.length - 1);
+        }
+    }
+
+    private Instance instance;
+    private final Layer bestPath = new Layer();
+    private final Layer currentPath = new Layer();
+    private final Layer edges = new Layer();
+    private final BitSet usedPixels = new BitSet(); // Pixels that already have a node drawn on them
+    private boolean dirty = true;
+
+    public TourCanvas(double width, double height) {
+        super(width, height);
+        bestPath.color = Color.DARKBLUE;
+        bestPath.width = 7;
+        currentPath.color = Color.DARKBLUE;
+        currentPath.width = 2;
+        currentPath.opacity = 0.6;
+        edges.color = Color.DARKBLUE;
+        edges.width = 5;
+        edges.pairs = true;
+    }
+
+    public void setInstance(Instance instance) {
+        if (this.instance != instance) {
+            this.instance = instance;
+            dirty = true;
+        }
+    }
+
+    public Instance getInstance() {
+        return instance;
+    }
+
+    // The main path, visiting the nodes in this order. The array is kept, not copied, so don't change it afterwards
+    public void setPath(int[] order, double width) {
+        setLayer(bestPath, order, width);
+    }
+
+    // The thin path drawn over the main one (null for none)
+    public void setCurrentPath(int[] order) {
+        setLayer(currentPath, order, currentPath.width);
+    }
+
+    // Loose edges, given as pairs of nodes: from[0], to[0], from[1], to[1], ...
+    public void setEdges(int[] pairs) {
+        setLayer(edges, pairs, edges.width);
+    }
+
+    // Draw only the first count edges of the main path and of the loose edges
+    public void setVisibleCount(int count) {
+        if (bestPath.visibleCount != count || edges.visibleCount != count) {
+            bestPath.visibleCount = count;
+            edges.visibleCount = count;
+            dirty = true;
+        }
+    }
+
+    // Number of edges of the main path or the loose edges, whichever is in use
+    public int getEdgeCount() {
+        return Math.max(bestPath.edgeCount(), edges.edgeCount());
+    }
+
+    // Remove every path and edge, leaving the nodes
+    public void clearPaths() {
+        setLayer(bestPath, null, bestPath.width);
+        setLayer(currentPath, null, currentPath.width);
+        setLayer(edges, null, edges.width);
+        setVisibleCount(Integer.MAX_VALUE);
+    }
+
+    // Redraw whatever changed since the last render()
+    public void markDirty() {
+        dirty = true;
+    }
+
+    // Draw the canvas if anything changed since the last call. Call it on every frame
+    public void render() {
+        if (!dirty)
+            return;
+        dirty = false;
+
+        GraphicsContext graphics = getGraphicsContext2D();
+        graphics.clearRect(0, 0, getWidth(), getHeight());
+        if (instance == null)
+            return;
+
+        drawNodes(graphics);
+        drawLayer(graphics, bestPath);
+        drawLayer(graphics, currentPath);
+        drawLayer(graphics, edges);
+        graphics.setGlobalAlpha(1);
+    }
+
+    private void setLayer(Layer layer, int[] nodes, double width) {
+        layer.nodes = nodes;
+        layer.width = width;
+        dirty = true;
+    }
+
+    private void drawNodes(GraphicsContext graphics) {
+        int n = instance.size();
+        graphics.setGlobalAlpha(1);
+        graphics.setFill(Color.WHITE);
+
+        if (n <= DOT_LIMIT) {
+            for (int i = 0; i < n; i++)
+                graphics.fillOval(instance.getX(i) - NODE_RADIUS, instance.getY(i) - NODE_RADIUS, 2 * NODE_RADIUS, 2 * NODE_RADIUS);
+            return;
+        }
+
+        int width = (int) Math.ceil(getWidth()), height = (int) Math.ceil(getHeight());
+        usedPixels.clear();
+        for (int i = 0; i < n; i++) {
+            int x = (int) instance.getX(i), y = (int) instance.getY(i);
+            if (x < 0 || y < 0 || x >= width || y >= height)
+                continue;
+
+            int pixel = y * width + x;
+            if (!usedPixels.get(pixel)) {
+                usedPixels.set(pixel);
+                graphics.fillRect(x, y, 1, 1);
+            }
+        }
+    }
+
+    private void drawLayer(GraphicsContext graphics, Layer layer) {
+        int count = Math.min(layer.visibleCount, layer.edgeCount());
+        if (count <= 0)
+            return;
+
+        graphics.setGlobalAlpha(layer.opacity);
+        graphics.setStroke(layer.color);
+        graphics.setLineWidth(instance.size() > DOT_LIMIT ? 1 : layer.width); // Thick lines would hide everything
+        graphics.setLineJoin(StrokeLineJoin.ROUND);
+        graphics.beginPath();
+
+        int[] nodes = layer.nodes;
+        if (layer.pairs) {
+            for (int i = 0; i < count; i++) {
+                double x1 = instance.getX(nodes[2 * i]), y1 = instance.getY(nodes[2 * i]);
+                double x2 = instance.getX(nodes[2 * i + 1]), y2 = instance.getY(nodes[2 * i + 1]);
+                if (Math.abs(x2 - x1) < LOD_PIXELS && Math.abs(y2 - y1) < LOD_PIXELS)
+                    continue; // Shorter than a pixel
+                graphics.moveTo(x1, y1);
+                graphics.lineTo(x2, y2);
+            }
+        } else {
+            double lastX = instance.getX(nodes[0]), lastY = instance.getY(nodes[0]);
+            graphics.moveTo(lastX, lastY);
+
+            for (int i = 1; i <= count; i++) {
+                double x = instance.getX(nodes[i]), y = instance.getY(nodes[i]);
+                if (i < count && Math.abs(x - lastX) < LOD_PIXELS && Math.abs(y - lastY) < LOD_PIXELS)
+                    continue; // Wouldn't show at this size; the last point is always drawn
+                graphics.lineTo(x, y);
+                lastX = x;
+                lastY = y;
+            }
+        }
+
+        graphics.stroke();
+    }
+}
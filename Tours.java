@@ -0,0 +1,107 @@
+// Helper methods for converting between the different ways the solvers return a tour
+// CSC 242-01
+// December 7, 2021
+
+import java.util.ArrayList;
+
+/*
+ * A tour is an int[] holding every city exactly once, in the order they are visited.
+ * The edge back from the last city to the first is implied.
+ */
+public class Tours {
+
+    private Tours() {
+    }
+
+    // Tour from a path that lists the cities in order, possibly repeating the first city at the end
+    public static int[] fromPath(ArrayList<Integer> path) {
+        int length = path.size();
+        if (length > 1 && path.get(0).equals(path.get(length - 1)))
+            length--;
+
+        int[] tour = new int[length];
+        for (int i = 0; i < length; i++)
+            tour[i] = path.get(i);
+        return tour;
+    }
+
+    // Tour from the unordered edges of a Hamiltonian cycle (or path) over all n cities
+    public static int[] fromEdges(ArrayList<GreedyAlgorithm.Edge> edges, int n) {
+        // Every city has at most two neighbours in the tour
+        int[][] connectedNodes = new int[n][2];
+        for (int[] connections : connectedNodes) {
+            connections[0] = -1;
+            connections[1] = -1;
+        }
+
+        for (GreedyAlgorithm.Edge edge : edges) {
+            int a = edge.getNode1Index(), b = edge.getNode2Index();
+            connectedNodes[a][connectedNodes[a][0] < 0 ? 0 : 1] = b;
+            connectedNodes[b][connectedNodes[b][0] < 0 ? 0 : 1] = a;
+        }
+
+        // Start at an end of the path if there is one, otherwise anywhere on the cycle
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            if (connectedNodes[i][1] < 0) {
+                start = i;
+                break;
+            }
+        }
+
+        int[] tour = new int[n];
+        int previous = -1, current = start;
+        for (int i = 0; i < n; i++) {
+            tour[i] = current;
+            int next = connectedNodes[current][0] != previous ? connectedNodes[current][0] : connectedNodes[current][1];
+            previous = current;
+            current = next;
+        }
+        return tour;
+    }
+
+    /*
+     * The same tour written the one standard way: starting at city 0, and going in the direction where the
+     * second city has a lower index than the last one. Two tours are the same cycle exactly when their
+     * canonical forms are equal. Changes the array and returns it.
+     */
+    public static int[] canonical(int[] tour) {
+        int n = tour.length;
+        int start = 0;
+        while (start < n && tour[start] != 0)
+            start++;
+        if (start == n)
+            return tour; // Not a tour of all the cities
+
+        rotate(tour, start);
+        if (n > 2 && tour[1] > tour[n - 1])
+            reverse(tour, 1, n - 1);
+        return tour;
+    }
+
+    // Length of the closed tour, including the edge from the last city back to the first
+    public static double length(DistanceOracle distances, int[] tour) {
+        if (tour.length < 2)
+            return 0;
+
+        double totalDistance = distances.distance(tour[tour.length - 1], tour[0]);
+        for (int i = 0; i < tour.length - 1; i++)
+            totalDistance += distances.distance(tour[i], tour[i + 1]);
+        return totalDistance;
+    }
+
+    // Rotate the array left so the element at start comes first
+    private static void rotate(int[] tour, int start) {
+        reverse(tour, 0, start - 1);
+        reverse(tour, start, tour.length - 1);
+        reverse(tour, 0, tour.length - 1);
+    }
+
+    private static void reverse(int[] tour, int i, int j) {
+        for (; i < j; i++, j--) {
+            int temp = tour[i];
+            tour[i] = tour[j];
+            tour[j] = temp;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+// 2-opt local search for improving a finished tour
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * A 2-opt move removes two edges (a, b) and (c, d) from the tour and reconnects it as (a, c) and (b, d),
+ * which reverses the path between them. It only helps if the new edges are shorter, and the new edge
+ * (a, c) has to be shorter than the removed (a, b) for that to be likely, so for every city only its
+ * nearest neighbours are tried as c, stopping at the first one that is farther away than b.
+ *
+ * The change in length of a move is worked out from the four edges alone. Cities whose surroundings
+ * haven't changed since they last failed to find a move are skipped ("don't look bits"): only the
+ * cities in a work queue are looked at, and the endpoints of every applied move go back into it.
+ */
+public class TwoOpt {
+    public static final int DEFAULT_NEIGHBOURS = 8; // Nearest neighbours tried for every city
+    private static final double EPSILON = 1e-7; // Improvements smaller than this are treated as rounding noise
+
+    private final Instance instance;
+    private final DistanceOracle distances;
+    private final CandidateLists candidates;
+    private int movesApplied;
+
+    public TwoOpt(Instance instance) {
+        this(instance, new CandidateLists(instance, DEFAULT_NEIGHBOURS));
+    }
+
+    public TwoOpt(Instance instance, CandidateLists candidates) {
+        this.instance = instance;
+        this.distances = instance.getDistances();
+        this.candidates = candidates;
+    }
+
+    // Improve a tour until no 2-opt move between near neighbours shortens it. The given array is not changed
+    public int[] improve(int[] order) {
+        ArrayTour tour = new ArrayTour(order);
+        improve(tour);
+        return tour.toArray();
+    }
+
+    // Improve the tour in place
+    public void improve(ArrayTour tour) {
+        int n = tour.size();
+        if (n < 4)
+            return;
+
+        WorkQueue queue = new WorkQueue(n);
+        for (int i = 0; i < n; i++)
+            queue.push(tour.cityAt(i));
+
+        while (!queue.isEmpty()) {
+            int a = queue.pop();
+
+            if (improveCity(tour, a, queue))
+                queue.push(a); // a may have more moves left
+        }
+    }
+
+    // Number of moves applied since this object was made
+    public int getMovesApplied() {
+        return movesApplied;
+    }
+
+    public Instance getInstance() {
+        return instance;
+    }
+
+    // Look for one improving move that adds an edge from a to one of its neighbours, and apply it
+    private boolean improveCity(ArrayTour tour, int a, WorkQueue queue) {
+        int k = candidates.getK();
+
+        for (int direction = 0; direction < 2; direction++) {
+            boolean forward = direction == 0;
+            int b = forward ? tour.next(a) : tour.prev(a);
+            double removedAB = distances.distance(a, b);
+
+            for (int i = 0; i < k; i++) {
+                int c = candidates.get(a, i);
+                double addedAC = distances.distance(a, c);
+                if (addedAC >= removedAB)
+                    break; // Neighbours are sorted, so none of the rest can help either
+
+                int d = forward ? tour.next(c) : tour.prev(c);
+                if (c == b || d == a)
+                    continue;
+
+                double delta = addedAC + distances.distance(b, d) - removedAB - distances.distance(c, d);
+                if (delta < -EPSILON) {
+                    tour.twoOptMove(a, b, c, d);
+                    movesApplied++;
+                    queue.push(b);
+                    queue.push(c);
+                    queue.push(d);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+// Queue of cities still to be looked at by the local search improvements
+// CSC 242-01
+// December 7, 2021
+
+/*
+ * Circular queue that holds every city at most once. A city that is not in the queue has its
+ * "don't look bit" set: the search skips it until a move changes one of its tour neighbours
+ * and puts it back in.
+ */
+class WorkQueue {
+    private final int[] cities;
+    private final boolean[] queued;
+    private int head, count;
+
+    WorkQueue(int n) {
+        cities = new int[n];
+        queued = new boolean[n];
+    }
+
+    void push(int city) {
+        if (queued[city])
+            return;
+        queued[city] = true;
+
+        int tail = head + count;
+        cities[tail >= cities.length ? tail - cities.length : tail] = city;
+        count++;
+    }
+
+    int pop() {
+        int city = cities[head];
+        if (++head == cities.length)
+            head = 0;
+        count--;
+        queued[city] = false;
+        return city;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+}